@@ -0,0 +1,103 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.goobi.beans.Process;
+import org.goobi.beans.Step;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Configurations of the folder import shared by all plugin instances within the JVM. A configuration is parsed and its types are resolved once
+ * for each project, step and ruleset. It is parsed again when the modification date of the configuration file or the ruleset changes.
+ */
+@Log4j2
+public class ConfigurationCache {
+
+    private static final Map<String, CachedConfiguration> CONFIGURATIONS = new ConcurrentHashMap<>();
+
+    private ConfigurationCache() {
+    }
+
+    /**
+     * Get the configuration of a step
+     * 
+     * @param pluginTitle title of the plugin, used to find the configuration file
+     * @param step the step to import
+     * @return the shared configuration
+     */
+    public static FolderimportConfiguration get(String pluginTitle, Step step) {
+        Process process = step.getProzess();
+        String ruleset = process.getRegelsatz().getDatei();
+        String key = pluginTitle + "|" + process.getProjekt().getTitel() + "|" + step.getTitel() + "|" + ruleset;
+        ConfigurationHelper helper = ConfigurationHelper.getInstance();
+        long configModified = readLastModified(helper.getConfigurationFolder(), "plugin_" + pluginTitle + ".xml");
+        long rulesetModified = readLastModified(helper.getRulesetFolder(), ruleset);
+
+        CachedConfiguration cached = CONFIGURATIONS.compute(key, (k, current) -> {
+            if (current != null && current.configModified == configModified && current.rulesetModified == rulesetModified) {
+                return current;
+            }
+            FolderimportConfiguration configuration =
+                    new FolderimportConfiguration(ConfigPlugins.getProjectAndStepConfig(pluginTitle, step), process.getRegelsatz().getPreferences());
+            log.debug("Read configuration {}", k);
+            return new CachedConfiguration(configuration, configModified, rulesetModified);
+        });
+        if (configModified == -1 || rulesetModified == -1) {
+            // a file could not be checked for changes, don't keep the configuration
+            CONFIGURATIONS.remove(key, cached);
+        }
+        return cached.configuration;
+    }
+
+    private static long readLastModified(String folder, String fileName) {
+        if (folder == null || fileName == null) {
+            return -1;
+        }
+        try {
+            return StorageProvider.getInstance().getLastModifiedDate(Paths.get(folder, fileName));
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    private static class CachedConfiguration {
+
+        private final FolderimportConfiguration configuration;
+
+        // modification dates of the files the configuration was read from
+        private final long configModified;
+        private final long rulesetModified;
+
+        private CachedConfiguration(FolderimportConfiguration configuration, long configModified, long rulesetModified) {
+            this.configuration = configuration;
+            this.configModified = configModified;
+            this.rulesetModified = rulesetModified;
+        }
+    }
+}
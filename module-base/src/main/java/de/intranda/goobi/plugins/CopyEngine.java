@@ -0,0 +1,313 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Copies the images of an import into the master folder.
+ * 
+ * The type {@link Type#STREAM} streams the data through the StorageProvider and works with every storage. {@link Type#CHANNEL} uses file channels
+ * for local files, either with FileChannel.transferTo in chunks of the configured size, or with pooled direct buffers of this size. With direct
+ * buffers the checksums are calculated during the copy, with transferTo they are calculated afterwards from the copied file. If S3 is used, the
+ * images are always streamed.
+ * 
+ * Optionally the copied files are synced to the disk, either each file or in batches of files. A copied file is only complete once its batch
+ * was synced; if the sync fails, all files of the batch fail.
+ */
+@Log4j2
+public class CopyEngine {
+
+    public enum Type {
+        STREAM,
+        CHANNEL;
+
+        /**
+         * Get the type for a configured value, unknown or empty values are interpreted as {@link #STREAM}
+         * 
+         * @param value the configured value
+         * @return the matching type
+         */
+        public static Type getByName(String value) {
+            for (Type type : values()) {
+                if (type.name().equalsIgnoreCase(value == null ? "" : value.trim())) {
+                    return type;
+                }
+            }
+            return STREAM;
+        }
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    // number of unused direct buffers kept for each chunk size
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    // the direct buffers are shared by all imports, allocating them is expensive and their memory is only released by the garbage collector
+    private static final Map<Integer, BlockingQueue<ByteBuffer>> BUFFER_POOL = new ConcurrentHashMap<>();
+
+    private final Type type;
+
+    private final int chunkSize;
+
+    private final boolean directBuffers;
+
+    // sync the copied files after this number of files, 1 syncs each file, 0 never
+    private final int fsyncBatch;
+
+    // limits the bytes read by the copies
+    private final IoGovernor governor;
+
+    // copied files that are not synced yet
+    private final List<ImageTransfer> unsynced = new ArrayList<>();
+
+    // copied files of failed batches, except the file whose copy completed the batch
+    private final List<ImageTransfer> syncFailures = new ArrayList<>();
+
+    public CopyEngine(Type type, int chunkSize, boolean directBuffers, int fsyncBatch) {
+        this(type, chunkSize, directBuffers, fsyncBatch, IoGovernor.getInstance());
+    }
+
+    public CopyEngine(Type type, int chunkSize, boolean directBuffers, int fsyncBatch, IoGovernor governor) {
+        this.type = type;
+        this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
+        this.directBuffers = directBuffers;
+        this.fsyncBatch = Math.max(0, fsyncBatch);
+        this.governor = governor;
+    }
+
+    /**
+     * Get an engine streaming the data through the StorageProvider without syncing
+     * 
+     * @return the engine
+     */
+    public static CopyEngine stream() {
+        return new CopyEngine(Type.STREAM, DEFAULT_CHUNK_SIZE, false, 0);
+    }
+
+    public IoGovernor getGovernor() {
+        return governor;
+    }
+
+    /**
+     * Copy an image into the master folder, the bytes are throttled by the I/O governor. If the files are synced in batches, the copy is only
+     * complete once its batch was synced.
+     * 
+     * @param transfer the transfer to execute
+     * @return the transfers completed by this copy: the transfer itself, nothing if its batch is not complete yet, or all files of the batch
+     * @throws IOException if the image cannot be copied or its batch cannot be synced
+     */
+    public List<ImageTransfer> copy(ImageTransfer transfer) throws IOException {
+        boolean local = !ConfigurationHelper.getInstance().useS3();
+        if (type == Type.CHANNEL && local) {
+            if (directBuffers) {
+                copyBuffered(transfer);
+            } else {
+                copyTransferTo(transfer);
+            }
+        } else {
+            copyStream(transfer);
+        }
+        if (!local || fsyncBatch == 0) {
+            return Collections.singletonList(transfer);
+        }
+        return sync(transfer);
+    }
+
+    /**
+     * Sync all copied files that are not synced yet, called after the last copy of an import
+     * 
+     * @return the transfers completed by the sync, an empty list if the sync failed
+     */
+    public List<ImageTransfer> flush() {
+        List<ImageTransfer> batch;
+        synchronized (unsynced) {
+            batch = new ArrayList<>(unsynced);
+            unsynced.clear();
+        }
+        if (batch.isEmpty()) {
+            return Collections.emptyList();
+        }
+        try {
+            force(batch);
+        } catch (IOException e) {
+            log.error("Copied images could not be synced to the disk", e);
+            synchronized (syncFailures) {
+                syncFailures.addAll(batch);
+            }
+            return Collections.emptyList();
+        }
+        forceFolder(batch.get(0).getDestination().getParent());
+        return batch;
+    }
+
+    /**
+     * Get and forget the copied files that could not be synced. The copy that completed a failed batch throws the exception itself and is not
+     * contained.
+     * 
+     * @return the failed transfers, an empty list if all batches were synced
+     */
+    public List<ImageTransfer> takeSyncFailures() {
+        synchronized (syncFailures) {
+            List<ImageTransfer> failures = new ArrayList<>(syncFailures);
+            syncFailures.clear();
+            return failures;
+        }
+    }
+
+    /**
+     * Stream the image through the StorageProvider and calculate the checksums in the same pass
+     */
+    private void copyStream(ImageTransfer transfer) throws IOException {
+        try (InputStream in = governor.throttle(StorageProvider.getInstance().newInputStream(transfer.getSource()));
+                OutputStream out = StorageProvider.getInstance().newOutputStream(transfer.getDestination())) {
+            FixityManifest.copy(in, out, transfer);
+        }
+    }
+
+    /**
+     * Let the operating system copy the file in chunks, the data does not pass the Java heap. The checksums are calculated afterwards.
+     */
+    private void copyTransferTo(ImageTransfer transfer) throws IOException {
+        try (FileChannel in = FileChannel.open(transfer.getSource(), StandardOpenOption.READ);
+                FileChannel out = openDestination(transfer.getDestination())) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = in.transferTo(position, Math.min(chunkSize, size - position), out);
+                if (count <= 0) {
+                    throw new IOException(transfer.getSource() + " was truncated during the copy");
+                }
+                governor.acquireBytes(count);
+                position += count;
+            }
+        }
+    }
+
+    /**
+     * Copy the file through a pooled direct buffer and calculate the checksums in the same pass
+     */
+    private void copyBuffered(ImageTransfer transfer) throws IOException {
+        MessageDigest sha256 = FixityManifest.getDigest("SHA-256");
+        MessageDigest md5 = FixityManifest.getDigest("MD5");
+        ByteBuffer buffer = borrowBuffer();
+        try (FileChannel in = FileChannel.open(transfer.getSource(), StandardOpenOption.READ);
+                FileChannel out = openDestination(transfer.getDestination())) {
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                governor.acquireBytes(buffer.remaining());
+                buffer.mark();
+                sha256.update(buffer);
+                buffer.reset();
+                md5.update(buffer);
+                buffer.reset();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                buffer.clear();
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+        transfer.setChecksum(FixityManifest.toHex(sha256.digest()));
+        transfer.setMd5(FixityManifest.toHex(md5.digest()));
+    }
+
+    private static FileChannel openDestination(Path destination) throws IOException {
+        return FileChannel.open(destination, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    private ByteBuffer borrowBuffer() {
+        ByteBuffer buffer = BUFFER_POOL.computeIfAbsent(chunkSize, k -> new ArrayBlockingQueue<>(MAX_POOLED_BUFFERS)).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(chunkSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        // if the pool is full, the buffer is left to the garbage collector
+        BUFFER_POOL.get(chunkSize).offer(buffer);
+    }
+
+    /**
+     * Remember the copied file and sync the batch once it is complete
+     */
+    private List<ImageTransfer> sync(ImageTransfer transfer) throws IOException {
+        List<ImageTransfer> batch;
+        synchronized (unsynced) {
+            unsynced.add(transfer);
+            if (unsynced.size() < fsyncBatch) {
+                return Collections.emptyList();
+            }
+            batch = new ArrayList<>(unsynced);
+            unsynced.clear();
+        }
+        try {
+            force(batch);
+        } catch (IOException e) {
+            // the other files of the batch may be lost as well
+            batch.remove(transfer);
+            synchronized (syncFailures) {
+                syncFailures.addAll(batch);
+            }
+            throw e;
+        }
+        return batch;
+    }
+
+    private static void force(List<ImageTransfer> batch) throws IOException {
+        for (ImageTransfer transfer : batch) {
+            try (FileChannel channel = FileChannel.open(transfer.getDestination(), StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+        }
+    }
+
+    /**
+     * Sync the folder, so the new file names are persisted as well. Not every operating system allows to open a folder, this is ignored.
+     */
+    private static void forceFolder(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Folder {} could not be synced: {}", folder, e.getMessage());
+        }
+    }
+}
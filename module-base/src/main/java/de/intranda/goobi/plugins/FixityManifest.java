@@ -0,0 +1,189 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Calculates the checksums of the transferred images and writes them as BagIt style manifest files into the process folder. If the import folder
+ * contains a manifest as well, the transferred images can be verified against it.
+ */
+@Log4j2
+public class FixityManifest {
+
+    public static final String MANIFEST_SHA256 = "manifest-sha256.txt";
+    public static final String MANIFEST_MD5 = "manifest-md5.txt";
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private FixityManifest() {
+    }
+
+    /**
+     * Read the stream completely, calculate sha256 and md5 checksums and write the data into the output stream in the same pass. The checksums
+     * are stored in the transfer.
+     * 
+     * @param in the data to read
+     * @param out the stream to write the data to, can be null if the data should only be read
+     * @param transfer the transfer to store the checksums in
+     * @throws IOException if reading or writing fails
+     */
+    public static void copy(InputStream in, OutputStream out, ImageTransfer transfer) throws IOException {
+        MessageDigest sha256 = getDigest("SHA-256");
+        MessageDigest md5 = getDigest("MD5");
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            sha256.update(buffer, 0, read);
+            md5.update(buffer, 0, read);
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+        }
+        transfer.setChecksum(toHex(sha256.digest()));
+        transfer.setMd5(toHex(md5.digest()));
+    }
+
+    /**
+     * Calculate the checksums of an already transferred file, used if the image was linked or moved
+     * 
+     * @param transfer the transfer, the destination file is read
+     * @throws IOException if the file cannot be read
+     */
+    public static void calculate(ImageTransfer transfer) throws IOException {
+        try (InputStream in = StorageProvider.getInstance().newInputStream(transfer.getDestination())) {
+            copy(in, null, transfer);
+        }
+    }
+
+    /**
+     * Write manifest-sha256.txt and manifest-md5.txt into the process folder. The paths are relative to the process folder.
+     * 
+     * @param processFolder the process folder
+     * @param transfers all transfers of the import
+     * @throws IOException if a manifest cannot be written
+     */
+    public static void write(Path processFolder, List<ImageTransfer> transfers) throws IOException {
+        StorageProvider storage = StorageProvider.getInstance();
+        try (BufferedWriter sha256 = new BufferedWriter(new OutputStreamWriter(storage.newOutputStream(processFolder.resolve(MANIFEST_SHA256)),
+                StandardCharsets.UTF_8));
+                BufferedWriter md5 = new BufferedWriter(new OutputStreamWriter(storage.newOutputStream(processFolder.resolve(MANIFEST_MD5)),
+                        StandardCharsets.UTF_8))) {
+            for (ImageTransfer transfer : transfers) {
+                String path = processFolder.relativize(transfer.getDestination()).toString().replace('\\', '/');
+                sha256.write(transfer.getChecksum() + "  " + path);
+                sha256.newLine();
+                md5.write(transfer.getMd5() + "  " + path);
+                md5.newLine();
+            }
+        }
+    }
+
+    /**
+     * Compare the transfers with the manifest files of the import folder, if there are any. Paths in the manifest are relative to the import folder,
+     * a leading BagIt payload folder 'data/' is ignored.
+     * 
+     * @param importFolder the folder of the volume
+     * @param transfers all transfers of the import
+     * @return the transfers with a different checksum, images not listed in the manifest are ignored
+     * @throws IOException if a manifest cannot be read
+     */
+    public static List<ImageTransfer> verify(Path importFolder, List<ImageTransfer> transfers) throws IOException {
+        Map<String, String> expectedSha256 = readManifest(importFolder.resolve(MANIFEST_SHA256));
+        Map<String, String> expectedMd5 = readManifest(importFolder.resolve(MANIFEST_MD5));
+        if (expectedSha256.isEmpty() && expectedMd5.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ImageTransfer> mismatches = new ArrayList<>();
+        for (ImageTransfer transfer : transfers) {
+            String path = importFolder.relativize(transfer.getSource()).toString().replace('\\', '/');
+            String sha256 = expectedSha256.get(path);
+            String md5 = expectedMd5.get(path);
+            if ((sha256 != null && !sha256.equalsIgnoreCase(transfer.getChecksum())) || (md5 != null && !md5.equalsIgnoreCase(transfer.getMd5()))) {
+                log.error("Checksum mismatch for {}", transfer.getSource());
+                mismatches.add(transfer);
+            }
+        }
+        return mismatches;
+    }
+
+    private static Map<String, String> readManifest(Path manifest) throws IOException {
+        Map<String, String> checksums = new HashMap<>();
+        if (!StorageProvider.getInstance().isFileExists(manifest)) {
+            return checksums;
+        }
+        try (BufferedReader reader =
+                new BufferedReader(new InputStreamReader(StorageProvider.getInstance().newInputStream(manifest), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                int separator = line.indexOf(' ');
+                if (separator == -1) {
+                    continue;
+                }
+                String path = line.substring(separator).trim();
+                if (path.startsWith("*")) {
+                    // binary mode marker of sha256sum
+                    path = path.substring(1);
+                }
+                if (path.startsWith("data/")) {
+                    path = path.substring(5);
+                }
+                checksums.put(Paths.get(path).normalize().toString().replace('\\', '/'), line.substring(0, separator));
+            }
+        }
+        return checksums;
+    }
+
+    static MessageDigest getDigest(String algorithm) throws IOException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.Normalizer;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.SubnodeConfiguration;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Finds the folder of a process within the root folder. The matcher computes a key from the metadata of the process and looks it up in the
+ * {@link RootFolderIndex}, which computes the keys of all folders only once, so matching many processes takes linear time.
+ */
+public interface FolderMatcher {
+
+    /**
+     * Get the key of a process
+     * 
+     * @param logical the logical structure element of the volume
+     * @return the key, null if the process has no value to match
+     */
+    String getKey(DocStruct logical);
+
+    /**
+     * Find the folders matching a key
+     * 
+     * @param index the index of the root folder
+     * @param key the key of the process
+     * @return all matching folders, sorted by name
+     */
+    List<Path> find(RootFolderIndex index, String key);
+
+    /**
+     * Create the matcher configured in &lt;matcher&gt;. Without this element the folder is found by the main title.
+     * 
+     * @param myconfig the configuration block of the step
+     * @param prefs the ruleset
+     * @return the matcher
+     * @throws IllegalArgumentException if the metadata type is missing in the ruleset or the lookup table cannot be read
+     */
+    static FolderMatcher create(SubnodeConfiguration myconfig, Prefs prefs) {
+        String type = myconfig.getString("/matcher/@type", "titlePrefix");
+        String defaultMetadata = "titlePrefix".equalsIgnoreCase(type) ? "TitleDocMain" : "CatalogIDDigital";
+        String metadata = myconfig.getString("/matcher/@metadata", defaultMetadata);
+        MetadataType metadataType = prefs.getMetadataTypeByName(metadata);
+        if (metadataType == null) {
+            throw new IllegalArgumentException("Metadata type " + metadata + " of the matcher is not defined in the ruleset.");
+        }
+        switch (type.toLowerCase(Locale.ROOT)) {
+            case "identifier":
+                return new IdentifierMatcher(metadataType);
+            case "regex":
+                String valuePattern = myconfig.getString("/matcher/@valuePattern", "");
+                return new RegexMatcher(metadataType, Pattern.compile(myconfig.getString("/matcher/@pattern", "^(.*)$")),
+                        valuePattern.isEmpty() ? null : Pattern.compile(valuePattern));
+            case "table":
+                try {
+                    return TableMatcher.read(metadataType, Paths.get(myconfig.getString("/matcher/@table", "")),
+                            myconfig.getString("/matcher/@separator", ";"));
+                } catch (IOException e) {
+                    throw new IllegalArgumentException("Lookup table of the matcher cannot be read: " + e.getMessage(), e);
+                }
+            default:
+                return new TitlePrefixMatcher(metadataType);
+        }
+    }
+
+    /**
+     * Get the first value of a metadata type
+     * 
+     * @param logical the logical structure element of the volume
+     * @param type the metadata type
+     * @return the trimmed value, null if it is missing or empty
+     */
+    static String getValue(DocStruct logical, MetadataType type) {
+        List<? extends Metadata> values = logical.getAllMetadataByType(type);
+        if (values == null || values.isEmpty() || values.get(0).getValue() == null) {
+            return null;
+        }
+        String value = values.get(0).getValue().trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Normalise a value for exact matching: trimmed, Unicode NFC and lower case
+     * 
+     * @param value the value
+     * @return the normalised value, null if it is null
+     */
+    static String normalise(String value) {
+        if (value == null) {
+            return null;
+        }
+        return Normalizer.normalize(value.trim(), Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+}
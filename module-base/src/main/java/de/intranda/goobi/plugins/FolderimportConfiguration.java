@@ -0,0 +1,277 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.goobi.production.cli.helper.StringPair;
+
+import lombok.Getter;
+import ugh.dl.DocStructType;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+
+/**
+ * Configuration of the folder import for one project and step, together with the types resolved from the ruleset. The object does not change
+ * after it was created and can be shared by all imports using the same configuration block and ruleset.
+ */
+@Getter
+public class FolderimportConfiguration {
+
+    // root folder for images
+    private final String rootFolder;
+
+    // doc type configuration, folder name and doc type
+    private final List<StringPair> prefixList;
+    private final String mainType;
+    private final List<StringPair> suffixList;
+
+    // files to import and how to rename them
+    private final ImageNameRules imageNameRules;
+
+    // number of parallel workers used to copy the images
+    private final int copyThreads;
+
+    // copy, hardlink, reflink-or-copy or move
+    private final TransferStrategy transferStrategy;
+
+    // write manifest-sha256.txt and manifest-md5.txt into the process folder
+    private final boolean writeFixityManifest;
+    // fail if the checksums don't match the manifest of the import folder
+    private final boolean failOnChecksumMismatch;
+
+    // maximum number of sub folders listed concurrently
+    private final int scanThreads;
+    // 1 reads only the images of the structure folders, higher values include deeper sub folders
+    private final int scanDepth;
+
+    // number of processes imported in parallel in batch mode
+    private final int batchThreads;
+
+    // how the images are copied: stream through the StorageProvider or use file channels with chunks or pooled direct buffers
+    private final CopyEngine.Type copyEngineType;
+    private final int copyChunkSize;
+    private final boolean copyDirectBuffers;
+    // sync the copied files to the disk after this number of files, 0 never
+    private final int fsyncBatch;
+
+    // I/O limits shared by all imports of this JVM, 0 means unlimited
+    private final long throttleBytesPerSecond;
+    private final int throttleMaxFiles;
+    // target copy time in milliseconds per megabyte, the number of concurrent files is reduced if copying is slower
+    private final long throttleTargetLatency;
+
+    // only write the plan of the import into the process folder, nothing is copied or changed
+    private final boolean planOnly;
+
+    // update the pages of a previous import instead of creating the structure again, only new or changed images are copied
+    private final boolean delta;
+    // detect changed images by their checksums instead of size and modification date
+    private final boolean deltaCompareChecksums;
+
+    // read the headers of the copied images and store their technical metadata in the content files
+    private final boolean technicalMetadata;
+
+    // prepare the volumes while they are delivered: watch the root folder, scan complete volumes and calculate their checksums in the background
+    private final boolean hotFolder;
+    // a volume without a change for this time is complete, 0 to wait for the sentinel file only
+    private final int hotFolderQuietMinutes;
+    // name of the file that marks a volume as complete, empty if no sentinel is used
+    private final String hotFolderSentinel;
+    // copy the images of complete volumes into this folder, it must be located on the file store of the master folders; empty to stage nothing
+    private final String hotFolderStagingFolder;
+    // number of volumes prepared at the same time
+    private final int hotFolderThreads;
+    // the root folder and the volumes that are not complete yet are listed at this interval
+    private final int hotFolderPollSeconds;
+
+    // publish the summed metrics of all imports via JMX
+    private final boolean metricsJmx;
+    // write a summary of the metrics of each import into the process journal
+    private final boolean metricsProcessLog;
+
+    private final Prefs prefs;
+
+    // finds the folder of a process within the root folder, null if the matcher is misconfigured
+    private final FolderMatcher folderMatcher;
+
+    // metadata of the structure elements of the main type
+    private final StructureMetadata structureMetadata;
+
+    private final DocStructType pageType;
+    private final MetadataType physType;
+    private final MetadataType logType;
+
+    // doc types of the prefix, main and suffix folders
+    private final List<String> importedTypes;
+    // doc type name -> type of the ruleset, resolved once for all folders
+    private final Map<String, DocStructType> docStructTypes;
+
+    // configured names that are missing in the ruleset, the import is not started if there are any
+    private final List<String> errors;
+
+    public FolderimportConfiguration(SubnodeConfiguration myconfig, Prefs prefs) {
+        rootFolder = myconfig.getString("/imageFolder");
+
+        List<StringPair> prefixes = new ArrayList<>();
+        for (HierarchicalConfiguration hc : myconfig.configurationsAt("/prefixType")) {
+            String doctype = hc.getString("@doctype");
+            String folderName = hc.getString("@foldername");
+            prefixes.add(new StringPair(folderName, doctype));
+        }
+        prefixList = Collections.unmodifiableList(prefixes);
+
+        mainType = myconfig.getString("/mainType");
+
+        List<StringPair> suffixes = new ArrayList<>();
+        for (HierarchicalConfiguration hc : myconfig.configurationsAt("/suffixType")) {
+            String folderName = hc.getString("@foldername");
+            String doctype = hc.getString("@doctype");
+            suffixes.add(new StringPair(folderName, doctype));
+        }
+        suffixList = Collections.unmodifiableList(suffixes);
+
+        List<String> includes = getStrings(myconfig, "/images/include");
+        List<String> excludes = myconfig.containsKey("/images/exclude") ? getStrings(myconfig, "/images/exclude") : ImageNameRules.DEFAULT_EXCLUDES;
+        imageNameRules = new ImageNameRules(includes, excludes, myconfig.getString("/images/rename/@pattern", ""),
+                myconfig.getString("/images/rename/@replacement", "_"));
+
+        copyThreads = myconfig.getInt("/copyThreads", 1);
+        transferStrategy = TransferStrategy.getByName(myconfig.getString("/transferStrategy", "copy"));
+        writeFixityManifest = myconfig.getBoolean("/fixity/@manifest", false);
+        failOnChecksumMismatch = myconfig.getBoolean("/fixity/@failOnMismatch", false);
+        scanThreads = myconfig.getInt("/scan/@threads", 8);
+        scanDepth = myconfig.getInt("/scan/@depth", 1);
+        batchThreads = myconfig.getInt("/batchThreads", 1);
+        copyEngineType = CopyEngine.Type.getByName(myconfig.getString("/copyEngine/@type", "stream"));
+        copyChunkSize = myconfig.getInt("/copyEngine/@chunkSize", CopyEngine.DEFAULT_CHUNK_SIZE);
+        copyDirectBuffers = myconfig.getBoolean("/copyEngine/@directBuffers", false);
+        fsyncBatch = myconfig.getInt("/copyEngine/@fsyncBatch", 0);
+        throttleBytesPerSecond = myconfig.getLong("/throttle/@bytesPerSecond", 0);
+        throttleMaxFiles = myconfig.getInt("/throttle/@maxFiles", 0);
+        throttleTargetLatency = myconfig.getLong("/throttle/@targetLatency", 0);
+        planOnly = myconfig.getBoolean("/planOnly", false);
+        technicalMetadata = myconfig.getBoolean("/technicalMetadata", false);
+        delta = myconfig.getBoolean("/delta/@enabled", false);
+        deltaCompareChecksums = myconfig.getBoolean("/delta/@compareChecksums", false);
+        hotFolder = myconfig.getBoolean("/hotFolder/@enabled", false);
+        hotFolderQuietMinutes = myconfig.getInt("/hotFolder/@quietMinutes", 10);
+        hotFolderSentinel = myconfig.getString("/hotFolder/@sentinel", "");
+        hotFolderStagingFolder = myconfig.getString("/hotFolder/@stagingFolder", "");
+        hotFolderThreads = myconfig.getInt("/hotFolder/@threads", 1);
+        hotFolderPollSeconds = myconfig.getInt("/hotFolder/@pollSeconds", 60);
+        metricsJmx = myconfig.getBoolean("/metrics/@jmx", false);
+        metricsProcessLog = myconfig.getBoolean("/metrics/@processLog", false);
+
+        this.prefs = prefs;
+        structureMetadata = StructureMetadata.create(myconfig, prefs);
+        pageType = prefs.getDocStrctTypeByName("page");
+        physType = prefs.getMetadataTypeByName("physPageNumber");
+        logType = prefs.getMetadataTypeByName("logicalPageNumber");
+
+        List<String> types = new ArrayList<>();
+        types.add(mainType);
+        for (StringPair sp : prefixList) {
+            types.add(sp.getTwo());
+        }
+        for (StringPair sp : suffixList) {
+            types.add(sp.getTwo());
+        }
+        importedTypes = Collections.unmodifiableList(types);
+
+        // resolve and validate all names now, so a wrong configuration fails before anything is copied
+        List<String> problems = new ArrayList<>();
+        Map<String, DocStructType> resolved = new HashMap<>();
+        for (String type : importedTypes) {
+            DocStructType docStructType = type == null ? null : prefs.getDocStrctTypeByName(type);
+            if (docStructType == null) {
+                problems.add("Doc type " + type + " is not defined in the ruleset.");
+            } else {
+                resolved.put(type, docStructType);
+            }
+        }
+        docStructTypes = Collections.unmodifiableMap(resolved);
+        if (pageType == null) {
+            problems.add("Doc type page is not defined in the ruleset.");
+        }
+        if (physType == null || logType == null) {
+            problems.add("Metadata types physPageNumber and logicalPageNumber must be defined in the ruleset.");
+        }
+        FolderMatcher matcher = null;
+        try {
+            matcher = FolderMatcher.create(myconfig, prefs);
+        } catch (IllegalArgumentException e) {
+            problems.add(e.getMessage());
+        }
+        folderMatcher = matcher;
+        errors = Collections.unmodifiableList(problems);
+    }
+
+    /**
+     * Get the resolved type of a configured doc type
+     * 
+     * @param name name of the doc type
+     * @return the type or null, if it is not configured or not defined in the ruleset
+     */
+    public DocStructType getDocStructType(String name) {
+        return docStructTypes.get(name);
+    }
+
+    /**
+     * Check that all configured types exist in the ruleset
+     * 
+     * @return true if the import can be started
+     */
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    /**
+     * Create the copy engine of an import, each import needs its own engine
+     * 
+     * @return the engine
+     */
+    public CopyEngine createCopyEngine() {
+        return new CopyEngine(copyEngineType, copyChunkSize, copyDirectBuffers, fsyncBatch, getIoGovernor());
+    }
+
+    /**
+     * Get the I/O governor shared by all imports, the configured limits are added to it
+     * 
+     * @return the governor
+     */
+    public IoGovernor getIoGovernor() {
+        return IoGovernor.getInstance(throttleBytesPerSecond, throttleMaxFiles, throttleTargetLatency);
+    }
+
+    private static List<String> getStrings(SubnodeConfiguration myconfig, String key) {
+        List<String> values = new ArrayList<>();
+        for (Object value : myconfig.getList(key)) {
+            values.add(String.valueOf(value));
+        }
+        return values;
+    }
+}
@@ -1,10 +1,10 @@
 package de.intranda.goobi.plugins;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collections;
 
 /**
  * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
@@ -25,23 +25,28 @@ import java.util.Collections;
  *
  */
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import org.apache.commons.configuration.HierarchicalConfiguration;
-import org.apache.commons.configuration.SubnodeConfiguration;
-import org.apache.commons.lang.StringUtils;
-import org.apache.commons.lang.SystemUtils;
 import org.goobi.beans.Process;
 import org.goobi.beans.Step;
-import org.goobi.production.cli.helper.StringPair;
+import org.goobi.production.enums.LogType;
 import org.goobi.production.enums.PluginGuiType;
 import org.goobi.production.enums.PluginReturnValue;
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
 
-import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.helper.Helper;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.exceptions.DAOException;
@@ -50,18 +55,11 @@ import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.log4j.Log4j2;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
-import ugh.dl.ContentFile;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
-import ugh.dl.DocStructType;
 import ugh.dl.Fileformat;
 import ugh.dl.Metadata;
-import ugh.dl.MetadataType;
-import ugh.dl.Prefs;
-import ugh.exceptions.MetadataTypeNotAllowedException;
 import ugh.exceptions.PreferencesException;
-import ugh.exceptions.TypeNotAllowedAsChildException;
-import ugh.exceptions.TypeNotAllowedForParentException;
 import ugh.exceptions.UGHException;
 import ugh.exceptions.WriteException;
 
@@ -75,57 +73,36 @@ public class FolderimportStepPlugin implements IStepPluginVersion2 {
     private Step step;
 
     private Process process;
-    private Prefs prefs;
 
-    // doc type configuration
-    private List<StringPair> prefixList = new ArrayList<>();
-    private String mainType;
-    private List<StringPair> suffixList = new ArrayList<>();
+    private FolderimportConfiguration configuration;
 
     // root folder for images
     @Setter // setter for junit test, call it after initialize
     private String rootFolder;
 
-    private MetadataType titleType;
-    private MetadataType datingType;
-    private MetadataType publicationType;
-
-    private DocStructType pageType;
-    private MetadataType physType;
-    private MetadataType logType;
-
     private String masterFolder;
 
+    // volume prepared by the hot folder watcher, taken by the running import
+    private HotFolderWatcher.PreparedVolume preparedVolume;
+
     @Override
     public void initialize(Step step, String returnPath) {
+        // read parameters from correct block in configuration file, shared by all instances until the file or the ruleset changes
+        initialize(step, ConfigurationCache.get(title, step));
+    }
+
+    /**
+     * Initialize the plugin with an already parsed configuration, used to share the configuration in batch mode
+     */
+    void initialize(Step step, FolderimportConfiguration configuration) {
         this.step = step;
+        this.configuration = configuration;
         process = step.getProzess();
-        prefs = process.getRegelsatz().getPreferences();
-        // read parameters from correct block in configuration file
-        SubnodeConfiguration myconfig = ConfigPlugins.getProjectAndStepConfig(title, step);
-        rootFolder = myconfig.getString("/imageFolder");
-
-        List<HierarchicalConfiguration> pl = myconfig.configurationsAt("/prefixType");
-        for (HierarchicalConfiguration hc : pl) {
-            String doctype = hc.getString("@doctype");
-            String folderName = hc.getString("@foldername");
-            prefixList.add(new StringPair(folderName, doctype));
-        }
-
-        mainType = myconfig.getString("/mainType");
-
-        List<HierarchicalConfiguration> sl = myconfig.configurationsAt("/suffixType");
-        for (HierarchicalConfiguration hc : sl) {
-            String folderName = hc.getString("@foldername");
-            String doctype = hc.getString("@doctype");
-            suffixList.add(new StringPair(folderName, doctype));
-        }
-        titleType = prefs.getMetadataTypeByName("TitleDocMain");
-        datingType = prefs.getMetadataTypeByName("Dating");
-        publicationType = prefs.getMetadataTypeByName("PublicationYear");
-        pageType = prefs.getDocStrctTypeByName("page");
-        physType = prefs.getMetadataTypeByName("physPageNumber");
-        logType = prefs.getMetadataTypeByName("logicalPageNumber");
+        rootFolder = configuration.getRootFolder();
+        if (configuration.isHotFolder()) {
+            // prepare the volumes of the following imports while they are delivered
+            HotFolderWatcher.start(configuration);
+        }
         try {
             masterFolder = process.getImagesOrigDirectory(false);
         } catch (IOException | SwapException | DAOException e) {
@@ -176,12 +153,32 @@ public class FolderimportStepPlugin implements IStepPluginVersion2 {
 
     @Override
     public PluginReturnValue run() {
+        if (configuration.isPlanOnly()) {
+            return writePlan();
+        }
+        ImportMetrics metrics = new ImportMetrics(process.getId());
+        PluginReturnValue result = runImport(metrics);
+        if (preparedVolume != null) {
+            // remove the staged images that were not moved into the master folder
+            preparedVolume.discard();
+            preparedVolume = null;
+        }
+        reportMetrics(metrics, result != PluginReturnValue.ERROR);
+        return result;
+    }
+
+    private PluginReturnValue runImport(ImportMetrics metrics) {
+        if (!configuration.isValid()) {
+            log.error("Invalid configuration for process {}: {}", process.getId(), configuration.getErrors());
+            Helper.setFehlerMeldung(configuration.getErrors().get(0));
+            return PluginReturnValue.ERROR;
+        }
         Fileformat fileformat = null;
         DigitalDocument dd = null;
         DocStruct logical = null;
         DocStruct physical = null;
         // open metadata file
-        try {
+        try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.READ_METADATA)) {
             fileformat = process.readMetadataFile();
             dd = fileformat.getDigitalDocument();
             logical = dd.getLogicalDocStruct();
@@ -196,205 +193,438 @@ public class FolderimportStepPlugin implements IStepPluginVersion2 {
             return PluginReturnValue.ERROR;
         }
 
-        // get main title
-        List<? extends Metadata> titles = logical.getAllMetadataByType(titleType);
-        if (titles.isEmpty()) {
-            log.error("No main title found for {}", process.getId());
-            Helper.setFehlerMeldung("No main title found.");
+        // all structure elements must be allowed below the volume, otherwise the import would stop halfway
+        List<String> typeErrors = new ArrayList<>();
+        if (!checkAllowedTypes(logical, typeErrors)) {
+            Helper.setFehlerMeldung(typeErrors.get(0));
             return PluginReturnValue.ERROR;
         }
-        String mainTitle = titles.get(0).getValue();
 
-        // Tile: "Konsulatsprotokolle 1636 - 1638"
+        // open the import journal, remove the structure of a previous run to create it again unless only the changes are imported
+        ImportJournal journal;
+        try {
+            journal = ImportJournal.open(process.getProcessDataDirectory());
+        } catch (IOException | SwapException e) {
+            log.error(e);
+            Helper.setFehlerMeldung("Import journal not readable");
+            return PluginReturnValue.ERROR;
+        }
+        StructureBuilder builder = new StructureBuilder(configuration, dd, logical, physical, masterFolder);
+        if (journal.isPreviousImport() && !configuration.isDelta()) {
+            try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.STRUCTURE)) {
+                builder.removeImportedStructure();
+            }
+        }
 
-        String titlePrefix = mainTitle.substring(0, mainTitle.lastIndexOf("-")).trim();
-        // -> "Konsulatsprotokolle 1636"
-        // Folder: Konsulatsprotokolle 1636-01-21 - 1638-04-17
-        // search for folder
-        List<Path> allFolder = StorageProvider.getInstance().listFiles(rootFolder);
-        Path folder = null;
-        for (Path current : allFolder) {
-            if (current.getFileName().toString().startsWith(titlePrefix)) {
-                folder = current;
-                break;
+        // images moved by an interrupted import are missing in the volume folder, move them back so their pages are created again
+        if (configuration.getTransferStrategy() == TransferStrategy.MOVE && !configuration.isDelta()) {
+            try {
+                int restored = journal.restoreMovedImages(Paths.get(masterFolder));
+                if (restored > 0) {
+                    log.info("{} images moved by the interrupted import of process {} were moved back", restored, process.getId());
+                }
+            } catch (IOException e) {
+                log.error(e);
+                Helper.setFehlerMeldung("Images moved by the interrupted import could not be moved back.");
+                return PluginReturnValue.ERROR;
             }
         }
 
-        // if folder doesn't exist -> error
-        if (folder == null || !StorageProvider.getInstance().isDirectory(folder)) {
-            log.error("No folder to import found: {}", folder);
-            Helper.setFehlerMeldung("No folder to import found.");
+        // find the folder of the volume
+        List<String> errors = new ArrayList<>();
+        Path folder = findImportFolder(logical, errors);
+        if (folder == null) {
+            Helper.setFehlerMeldung(errors.get(0));
             return PluginReturnValue.ERROR;
         }
 
-        // read content of folder
-
-        List<String> allFolderInDirectory = StorageProvider.getInstance().list(folder.toString());
-
-        List<String> prefixFolder = new ArrayList<>();
-        List<String> suffixFolder = new ArrayList<>();
-        List<String> otherFolder = new ArrayList<>();
-
-        // get correct prefix items from configuration file
-        for (StringPair sp : prefixList) {
-            String folderName = sp.getOne();
-            for (String currentFolder : allFolderInDirectory) {
-                if (currentFolder.equalsIgnoreCase(folderName)) {
-                    prefixFolder.add(currentFolder);
-                }
+        // read content of folder, all sub folders are listed concurrently unless the hot folder watcher has already prepared the volume
+        VolumeSnapshot snapshot;
+        try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.LISTING)) {
+            if (configuration.isHotFolder()) {
+                preparedVolume = HotFolderWatcher.take(rootFolder, folder, configuration.getScanDepth());
             }
+            if (preparedVolume != null) {
+                snapshot = preparedVolume.getSnapshot();
+            } else {
+                snapshot = new VolumeScanner(configuration.getScanThreads(), configuration.getScanDepth()).scan(folder);
+            }
+        } catch (InterruptedException e) {
+            log.error(e);
+            Thread.currentThread().interrupt();
+            return PluginReturnValue.ERROR;
         }
 
-        // get correct suffix items from configuration file (like Buchrücken, Frabkeil, ...)
-
-        for (StringPair sp : suffixList) {
-            String folderName = sp.getOne();
-            for (String currentFolder : allFolderInDirectory) {
-                if (currentFolder.equalsIgnoreCase(folderName)) {
-                    suffixFolder.add(currentFolder);
+        // create all structure elements or update the existing pages, collect the images to copy
+        List<ImageTransfer> transfers;
+        StructureDelta delta = null;
+        try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.STRUCTURE)) {
+            if (configuration.isDelta()) {
+                // moved images are missing in the volume folder, their pages would be removed
+                if (configuration.getTransferStrategy() == TransferStrategy.MOVE) {
+                    Helper.setFehlerMeldung("The delta import cannot be used with the transfer strategy move.");
+                    return PluginReturnValue.ERROR;
                 }
+                delta = builder.update(snapshot, configuration.isDeltaCompareChecksums());
+                log.info("Delta import of process {}: {}", process.getId(), delta);
+                transfers = delta.getTransfers();
+            } else {
+                transfers = builder.build(snapshot);
             }
+        } catch (IOException e) {
+            log.error(e);
+            Helper.setFehlerMeldung("Images could not be compared with the master folder.");
+            journal.close();
+            return PluginReturnValue.ERROR;
         }
 
-        // order other folder
-        for (String currentFolder : allFolderInDirectory) {
-            if (!prefixFolder.contains(currentFolder) && !suffixFolder.contains(currentFolder)) {
-                otherFolder.add(currentFolder);
-            }
+        // check the whole import before anything is copied, report all problems at once
+        List<String> problems = new ArrayList<>(builder.getErrors());
+        try {
+            problems.addAll(new PreflightCheck(configuration).check(snapshot, transfers,
+                    delta == null ? Collections.emptySet() : delta.getUnchanged(), Paths.get(masterFolder)));
+        } catch (InterruptedException e) {
+            log.error(e);
+            Thread.currentThread().interrupt();
+            return PluginReturnValue.ERROR;
+        }
+        if (!problems.isEmpty()) {
+            reportProblems(problems);
+            return PluginReturnValue.ERROR;
         }
-        Collections.sort(otherFolder);
-        int imageIndex = 1;
 
-        // create all structure elements
+        // the checksums of the images with unchanged sizes are only compared once the import is known to be possible
+        if (delta != null && configuration.isDeltaCompareChecksums()) {
+            try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.FIXITY)) {
+                builder.compareChecksums(delta);
+                log.info("Delta import of process {} after comparing the checksums: {}", process.getId(), delta);
+            } catch (IOException e) {
+                log.error(e);
+                Helper.setFehlerMeldung("Images could not be compared with the master folder.");
+                journal.close();
+                return PluginReturnValue.ERROR;
+            }
+        }
 
-        // create cover, title page, ...
-        for (String foldername : prefixFolder) {
-            String docstructName = null;
-            for (StringPair sp : prefixList) {
-                if (foldername.equalsIgnoreCase(sp.getOne())) {
-                    docstructName = sp.getTwo();
-                    break;
-                }
+        // copy, link or move all images into the master folder, skip the images completed by a previous run or unchanged since then
+        try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.TRANSFER)) {
+            StorageProvider.getInstance().createDirectories(Paths.get(masterFolder));
+            if (preparedVolume != null) {
+                log.info("{} of {} images of process {} were prepared by the hot folder watcher", preparedVolume.apply(transfers), transfers.size(),
+                        process.getId());
             }
-            try {
-                imageIndex = createDocstruct(dd, logical, physical, folder, foldername, docstructName, imageIndex, false);
-            } catch (UGHException | IOException e) {
-                log.error(e);
+            List<ImageTransfer> pending = journal.plan(transfers, delta == null ? null : delta.getUnchanged());
+            ImageTransferExecutor executor =
+                    new ImageTransferExecutor(configuration.getCopyThreads(), configuration.getTransferStrategy(), configuration.createCopyEngine());
+            executor.addListener(journal);
+            executor.addListener(metrics);
+            if (configuration.isTechnicalMetadata()) {
+                // the header is read by the worker that has just written the image
+                executor.addListener(new ImageProbe());
+            }
+            List<ImageTransfer> failed = executor.execute(pending);
+            if (!failed.isEmpty()) {
+                log.error("{} of {} images could not be copied for process {}", failed.size(), pending.size(), process.getId());
+                Helper.setFehlerMeldung("Images could not be copied.");
+                journal.close();
+                return PluginReturnValue.ERROR;
             }
+        } catch (IOException e) {
+            log.error(e);
+            Helper.setFehlerMeldung("Images could not be copied.");
+            journal.close();
+            return PluginReturnValue.ERROR;
+        } catch (InterruptedException e) {
+            log.error(e);
+            Thread.currentThread().interrupt();
+            journal.close();
+            return PluginReturnValue.ERROR;
         }
-        // create main elements
-        for (String currentFolder : otherFolder) {
-            try {
-                // create metadata TitleDocMain,  PublicationYear, Dating
-                imageIndex = createDocstruct(dd, logical, physical, folder, currentFolder, mainType, imageIndex, true);
-            } catch (UGHException | IOException e) {
-                log.error(e);
+
+        // store mimetype and technical metadata of the images in their content files
+        if (configuration.isTechnicalMetadata()) {
+            try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.STRUCTURE)) {
+                builder.applyImageInfo(transfers);
             }
         }
 
-        // create end elements
-        for (String foldername : suffixFolder) {
-            String docstructName = null;
-            for (StringPair sp : suffixList) {
-                if (foldername.equalsIgnoreCase(sp.getOne())) {
-                    docstructName = sp.getTwo();
-                    break;
+        // verify the checksums against the manifest of the import folder and write the manifest of the process
+        try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.FIXITY)) {
+            List<ImageTransfer> mismatches = FixityManifest.verify(folder, transfers);
+            if (!mismatches.isEmpty()) {
+                log.error("{} images of process {} don't match the manifest of {}", mismatches.size(), process.getId(), folder);
+                if (configuration.isFailOnChecksumMismatch()) {
+                    Helper.setFehlerMeldung("Checksums don't match the manifest of the import folder.");
+                    journal.close();
+                    return PluginReturnValue.ERROR;
                 }
             }
-            try {
-                imageIndex = createDocstruct(dd, logical, physical, folder, foldername, docstructName, imageIndex, false);
-            } catch (UGHException | IOException e) {
-                log.error(e);
+            if (configuration.isWriteFixityManifest()) {
+                FixityManifest.write(Paths.get(process.getProcessDataDirectory()), transfers);
             }
+        } catch (IOException | SwapException e) {
+            log.error(e);
+            Helper.setFehlerMeldung("Fixity manifest could not be written.");
+            journal.close();
+            return PluginReturnValue.ERROR;
         }
-        // save
+
+        // save, the step fails if the metadata cannot be written
         try {
-            process.writeMetadataFile(fileformat);
+            try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.WRITE_METADATA)) {
+                process.writeMetadataFile(fileformat);
+            }
+            journal.finish(metrics.getSummary());
         } catch (WriteException | PreferencesException | IOException | SwapException e) {
             log.error(e);
+            Helper.setFehlerMeldung("Metadata could not be written.");
+            journal.close();
+            return PluginReturnValue.ERROR;
+        }
+
+        // the metadata no longer references the images of removed pages
+        if (delta != null) {
+            for (Path file : delta.getRemovedFiles()) {
+                try {
+                    StorageProvider.getInstance().deleteFile(file);
+                } catch (IOException e) {
+                    log.warn("Image {} of a removed page could not be deleted: {}", file, e.getMessage());
+                }
+            }
         }
 
         return PluginReturnValue.FINISH;
     }
 
-    private int createDocstruct(DigitalDocument dd, DocStruct logical, DocStruct physical, Path mainFolder, String imageFolder, String docstructName,
-            int imageIndex, boolean createMetadata)
-                    throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException, MetadataTypeNotAllowedException, IOException {
-        // create docstruct
-        DocStruct ds = dd.createDocStruct(prefs.getDocStrctTypeByName(docstructName));
-        logical.addChild(ds);
-
-        // create page elements
-        List<Path> imagesInFolder = StorageProvider.getInstance().listFiles(Paths.get(mainFolder.toString(), imageFolder).toString());
-        for (Path image : imagesInFolder) {
-            String newImageName = imageFolder + "_" + image.getFileName().toString();
-            if (newImageName.endsWith("Thumbs.db")) {
-                continue;
+    /**
+     * Log the problems found before the import and write them into the report file of the process
+     */
+    private void reportProblems(List<String> problems) {
+        for (String problem : problems) {
+            log.error("Process {}: {}", process.getId(), problem);
+        }
+        String report = "";
+        try {
+            report = ", see " + PreflightCheck.writeReport(Paths.get(process.getProcessDataDirectory()), problems).getFileName();
+        } catch (IOException | SwapException e) {
+            log.error(e);
+        }
+        Helper.setFehlerMeldung("The import was not started, " + problems.size() + " problems found" + report + ". " + problems.get(0));
+    }
+
+    /**
+     * Check that the ruleset allows the configured doc types as children of the volume
+     * 
+     * @param logical the logical structure element of the volume
+     * @param errors the types that are not allowed are added to this list
+     * @return true if all types are allowed
+     */
+    private boolean checkAllowedTypes(DocStruct logical, List<String> errors) {
+        boolean allowed = true;
+        List<String> allowedTypes = logical.getType().getAllAllowedDocStructTypes();
+        for (String type : configuration.getImportedTypes()) {
+            if (allowedTypes == null || !allowedTypes.contains(type)) {
+                errors.add("Doc type " + type + " is not allowed in " + logical.getType().getName() + ".");
+                allowed = false;
             }
-            newImageName = newImageName.replaceAll("[^\\w_\\.]", "_");
+        }
+        return allowed;
+    }
 
-            DocStruct dsPage = dd.createDocStruct(pageType);
+    /**
+     * Find the folder of the volume with the configured matcher, by default by the main title of the process
+     * 
+     * @param logical the logical structure element of the volume
+     * @param errors the reason is added to this list if no folder was found
+     * @return the folder or null, if the value to match is missing or no or more than one folder matches
+     */
+    private Path findImportFolder(DocStruct logical, List<String> errors) {
+        FolderMatcher matcher = configuration.getFolderMatcher();
+        String key = matcher == null ? null : matcher.getKey(logical);
+        if (key == null) {
+            log.error("No value to find the folder of process {}", process.getId());
+            errors.add("No value to find the folder to import found.");
+            return null;
+        }
 
-            ContentFile cf = new ContentFile();
-            if (SystemUtils.IS_OS_WINDOWS) {
-                cf.setLocation("file:/" + Paths.get(masterFolder, newImageName).toString());
-            } else {
-                cf.setLocation("file://" + Paths.get(masterFolder, newImageName).toString());
+        // search for folder
+        List<Path> matchingFolder = matcher.find(RootFolderIndex.getInstance(rootFolder), key);
+        if (matchingFolder.size() > 1) {
+            log.error("More than one folder to import found for process {}: {}", process.getId(), matchingFolder);
+            errors.add("More than one folder to import found: " + matchingFolder);
+            return null;
+        }
+        Path folder = matchingFolder.isEmpty() ? null : matchingFolder.get(0);
+
+        // if folder doesn't exist -> error
+        if (folder == null || !StorageProvider.getInstance().isDirectory(folder)) {
+            log.error("No folder to import found for {}: {}", key, folder);
+            errors.add("No folder to import found.");
+            return null;
+        }
+        return folder;
+    }
+
+    /**
+     * Plan the import without changing anything: find the folder of the volume, order its structure folders like the import does and compute the
+     * new names and the page order of all images. The duration is estimated from the throughput measured by earlier imports.
+     * 
+     * @return the plan, its errors contain the reasons why the import would fail
+     */
+    public ImportPlan plan() {
+        ImportPlan plan = new ImportPlan(process.getId(), process.getTitel());
+        plan.setTransferStrategy(configuration.getTransferStrategy().name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        DocStruct logical;
+        try {
+            logical = process.readMetadataFile().getDigitalDocument().getLogicalDocStruct();
+            if (logical.getType().isAnchor()) {
+                logical = logical.getAllChildren().get(0);
             }
-            dsPage.addContentFile(cf);
-            physical.addChild(dsPage);
-            // assign pages to ds and logical
-
-            Metadata mdLogicalPageNo = new Metadata(logType);
-            dsPage.addMetadata(mdLogicalPageNo);
-
-            Metadata mdPhysPageNo = new Metadata(physType);
-            mdPhysPageNo.setValue(String.valueOf(imageIndex));
-            dsPage.addMetadata(mdPhysPageNo);
-            logical.addReferenceTo(dsPage, "logical_physical");
-            ds.addReferenceTo(dsPage, "logical_physical");
-            imageIndex = imageIndex + 1;
-            if (createMetadata) {
-                try {
-                    if (titleType != null) {
-                        Metadata title = null;
-                        if (ds.getAllMetadataByType(titleType).isEmpty()) {
-                            title = new Metadata(titleType);
-                            ds.addMetadata(title);
-                        } else {
-                            title = ds.getAllMetadataByType(titleType).get(0);
-                        }
-                        title.setValue("Protokoll vom " + imageFolder);
+        } catch (UGHException | IOException | SwapException e) {
+            log.error(e);
+            plan.getErrors().add("Metadata not readable");
+            return plan;
+        }
+        plan.getErrors().addAll(configuration.getErrors());
+        checkAllowedTypes(logical, plan.getErrors());
+        Path folder = findImportFolder(logical, plan.getErrors());
+        if (folder == null) {
+            return plan;
+        }
+        plan.setImportFolder(folder.toString());
+
+        try {
+            VolumeSnapshot snapshot = new VolumeScanner(configuration.getScanThreads(), configuration.getScanDepth()).scan(folder);
+            ImportPlanner planner = new ImportPlanner(configuration, masterFolder);
+            List<ImageTransfer> transfers = new ArrayList<>(snapshot.getImageCount());
+            for (PlannedFolder plannedFolder : planner.orderFolders(snapshot)) {
+                List<ImageTransfer> folderTransfers = planner.planImages(snapshot, plannedFolder.getName());
+                for (ImageTransfer transfer : folderTransfers) {
+                    if (transfer.getSize() < 0) {
+                        transfer.setSize(StorageProvider.getInstance().getFileSize(transfer.getSource()));
                     }
-                } catch (Exception e) {
-                    log.error(e);
                 }
-                String date = imageFolder.split(";")[0];
-                if (StringUtils.isNotBlank(date)) {
-                    try {
-                        if (publicationType != null) {
-                            Metadata md = new Metadata(publicationType);
-                            md.setValue(date);
-                            ds.addMetadata(md);
-                        }
-                        if (datingType != null) {
-                            Metadata md = new Metadata(datingType);
-                            md.setValue(date);
-                            ds.addMetadata(md);
-                        }
-                    } catch (Exception e) {
-                        log.error(e);
-                    }
+                plan.addFolder(plannedFolder, folderTransfers);
+                transfers.addAll(folderTransfers);
+            }
+            for (List<ImageTransfer> collision : ImportPlanner.findCollisions(transfers)) {
+                List<String> sources = new ArrayList<>(collision.size());
+                for (ImageTransfer transfer : collision) {
+                    sources.add(transfer.getSource().toString());
                 }
+                plan.getCollisions().add(sources);
+            }
+            plan.getErrors().addAll(new PreflightCheck(configuration).check(snapshot, transfers, Collections.emptySet(), Paths.get(masterFolder)));
+        } catch (IOException e) {
+            log.error(e);
+            plan.getErrors().add("Folder " + folder + " not readable");
+        } catch (InterruptedException e) {
+            log.error(e);
+            Thread.currentThread().interrupt();
+            plan.getErrors().add("Planning was interrupted");
+        }
+        long bytesPerSecond = ThroughputHistory.read();
+        plan.estimate(bytesPerSecond > 0 ? bytesPerSecond : JmxMetricsReporter.getInstance().getBytesPerSecond());
+        return plan;
+    }
 
+    /**
+     * Plan-only mode: write the plan into the process folder, the step stays open
+     */
+    private PluginReturnValue writePlan() {
+        ImportPlan plan = plan();
+        try {
+            Path planFile = Paths.get(process.getProcessDataDirectory(), ImportPlan.FILENAME);
+            try (OutputStream out = StorageProvider.getInstance().newOutputStream(planFile)) {
+                out.write(plan.toJson().getBytes(StandardCharsets.UTF_8));
             }
+            log.info("Import plan of process {}: {} files, {} bytes, written to {}", process.getId(), plan.getFiles(), plan.getBytes(), planFile);
+        } catch (IOException | SwapException e) {
+            log.error(e);
+            Helper.setFehlerMeldung("Import plan could not be written.");
+            return PluginReturnValue.ERROR;
+        }
+        if (!plan.getErrors().isEmpty()) {
+            Helper.setFehlerMeldung(plan.getErrors().get(0));
+            return PluginReturnValue.ERROR;
+        }
+        return PluginReturnValue.WAIT;
+    }
 
-            // rename and copy image
+    /**
+     * Pass the metrics of an import to the JMX bean, the process journal and all reporters registered via the ServiceLoader
+     */
+    private void reportMetrics(ImportMetrics metrics, boolean successful) {
+        log.debug("Process {}: {}", process.getId(), metrics.getSummary());
+        if (successful && metrics.getBytes() > 0) {
+            ThroughputHistory.record(metrics.getBytesPerSecond());
+        }
+        if (configuration.isMetricsJmx()) {
+            JmxMetricsReporter.getInstance().report(metrics, successful);
+        }
+        if (configuration.isMetricsProcessLog()) {
+            Helper.addMessageToProcessJournal(process.getId(), LogType.DEBUG, metrics.getSummary());
+        }
+        for (ImportMetricsReporter reporter : ServiceLoader.load(ImportMetricsReporter.class, getClass().getClassLoader())) {
+            try {
+                reporter.report(metrics, successful);
+            } catch (RuntimeException e) {
+                log.error("Metrics reporter {} failed", reporter.getClass().getName(), e);
+            }
+        }
+    }
 
-            Path destination = Paths.get(masterFolder, newImageName);
-            StorageProvider.getInstance().copyFile(image, destination);
+    /**
+     * Import the folders of many processes in one run. The configuration and the ruleset types are read once for each project and ruleset and
+     * shared by all imports, the root folder index is shared anyway. The processes are imported in parallel, the number of parallel imports is
+     * configured in &lt;batchThreads&gt; of the configuration block of this step.
+     * 
+     * @param processes the processes to import
+     * @return the result of each import by process id, in the order of the given list
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the imports
+     */
+    public Map<Integer, PluginReturnValue> runBatch(List<Process> processes) throws InterruptedException {
+        Map<Integer, Future<PluginReturnValue>> futures = new LinkedHashMap<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, configuration.getBatchThreads()));
+        try {
+            for (Process currentProcess : processes) {
+                futures.put(currentProcess.getId(), executor.submit(() -> {
+                    Step currentStep = getBatchStep(currentProcess);
+                    FolderimportConfiguration currentConfiguration = ConfigurationCache.get(title, currentStep);
+                    FolderimportStepPlugin plugin = new FolderimportStepPlugin();
+                    plugin.initialize(currentStep, currentConfiguration);
+                    return plugin.run();
+                }));
+            }
+            Map<Integer, PluginReturnValue> results = new LinkedHashMap<>();
+            for (Map.Entry<Integer, Future<PluginReturnValue>> entry : futures.entrySet()) {
+                PluginReturnValue result;
+                try {
+                    result = entry.getValue().get();
+                } catch (ExecutionException e) {
+                    log.error("Import of process {} failed", entry.getKey(), e.getCause());
+                    result = PluginReturnValue.ERROR;
+                }
+                log.info("Import of process {} finished with {}", entry.getKey(), result);
+                results.put(entry.getKey(), result);
+            }
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 
+    /**
+     * Get the step of the process with the same title as the step of this plugin, the configuration is read for this step
+     */
+    private Step getBatchStep(Process currentProcess) {
+        if (currentProcess.getSchritte() != null) {
+            for (Step currentStep : currentProcess.getSchritte()) {
+                if (step.getTitel().equals(currentStep.getTitel())) {
+                    return currentStep;
+                }
+            }
         }
-        return imageIndex;
+        throw new IllegalArgumentException("Process " + currentProcess.getId() + " has no step " + step.getTitel());
     }
 }
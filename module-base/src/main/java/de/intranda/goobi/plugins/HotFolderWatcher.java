@@ -0,0 +1,594 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Watches the root folder of the import while the vendors upload their volumes. A volume is complete if its sentinel file exists or nothing in it
+ * changed for the configured quiet time. Complete volumes are scanned and the checksums of their images are calculated in the background. If a
+ * staging folder is configured, the images are copied into it in the same pass. When the import step of the process starts, it takes the prepared
+ * volume, so the folder is not listed again, the checksums are not calculated again and the staged images are only moved into the master folder.
+ * 
+ * The root folder is listed at the poll interval, new and changed volume folders are found this way. Only the volumes that are not complete yet
+ * or are prepared are checked in more detail, their folders, file sizes and modification dates are compared. On local file systems a watch
+ * service reports changes earlier; it watches the root folder and the folders created after the watcher was started. Changes made by other hosts
+ * on network file systems are only found by polling.
+ * 
+ * A prepared volume is dropped as soon as anything changes in it. There is one watcher for each root folder, it is started in the background by
+ * the first import that uses it and restarted if its configuration changes. It stops if no import used it for a day, e.g. because the plugin
+ * was reloaded. Volumes that were already complete before it started are not prepared.
+ */
+@Log4j2
+public class HotFolderWatcher {
+
+    // root folder -> running watcher
+    private static final Map<Path, HotFolderWatcher> WATCHERS = new ConcurrentHashMap<>();
+
+    // how often events and complete volumes are checked
+    private static final long CHECK_MILLIS = 5000;
+
+    // the watcher stops if no import used it for this time
+    private static final long IDLE_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // file systems that don't report the changes made by other hosts
+    private static final Set<String> REMOTE_FILE_SYSTEMS = Set.of("nfs", "nfs4", "cifs", "smb", "smb2", "smbfs", "smb3", "afs", "fuse.sshfs");
+
+    private final Path rootFolder;
+    private final ImageNameRules imageNameRules;
+    private final int scanThreads;
+    private final int scanDepth;
+    // a volume without a change for this time is complete, 0 to wait for the sentinel file only
+    private final long quietMillis;
+    // name of the file that marks a volume as complete, empty if no sentinel is used
+    private final String sentinel;
+    // folder on the file store of the master folders, the images are copied into it; null to calculate the checksums only
+    private final Path stagingFolder;
+    // the root folder and the observed volumes are listed at this interval
+    private final long pollMillis;
+    // use a watch service in addition to polling, if the root folder is on a local file system
+    private final boolean useWatchService;
+
+    private final ExecutorService preparer;
+
+    // configuration the watcher was started with, it is restarted if the configuration changes
+    private String settings = "";
+
+    // limits the reads of the preparation like the imports
+    private IoGovernor governor = IoGovernor.getInstance();
+
+    private volatile Thread thread;
+    private volatile boolean stopped;
+    private volatile long lastUsed = System.currentTimeMillis();
+
+    // null if only polling is used
+    private WatchService watchService;
+
+    // the following maps are only used by the watching thread
+    // volume -> modification date of the volume folder at the last poll, null before the first poll
+    private Map<Path, Long> volumeModified;
+    // volume -> time of the last change, volumes that are not complete yet
+    private final Map<Path, Long> changedVolumes = new HashMap<>();
+    // volume -> signature of its folders and files at the last poll, kept for observed volumes only
+    private final Map<Path, Long> signatures = new HashMap<>();
+
+    // volumes that are prepared at the moment
+    private final Set<Path> preparing = ConcurrentHashMap.newKeySet();
+    // volume -> number of changes, a preparation is dropped if the volume changed meanwhile
+    private final Map<Path, Long> versions = new ConcurrentHashMap<>();
+    // volume -> prepared volume, waiting for the import
+    private final Map<Path, PreparedVolume> preparedVolumes = new ConcurrentHashMap<>();
+
+    HotFolderWatcher(Path rootFolder, ImageNameRules imageNameRules, int scanThreads, int scanDepth, int threads, long quietMillis, String sentinel,
+            Path stagingFolder, long pollMillis, boolean useWatchService) {
+        this.rootFolder = rootFolder;
+        this.imageNameRules = imageNameRules;
+        this.scanThreads = scanThreads;
+        this.scanDepth = Math.max(1, scanDepth);
+        this.quietMillis = quietMillis;
+        this.sentinel = sentinel == null ? "" : sentinel;
+        this.stagingFolder = stagingFolder;
+        this.pollMillis = Math.max(1000, pollMillis);
+        this.useWatchService = useWatchService;
+        preparer = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread preparerThread = new Thread(r, "folderimport-prepare");
+            preparerThread.setDaemon(true);
+            return preparerThread;
+        });
+    }
+
+    /**
+     * Start the watcher of the configured root folder in the background, if it is not running yet. A running watcher with a different
+     * configuration is stopped and replaced.
+     * 
+     * @param configuration the configuration of the import, the first import of a root folder defines the settings of its watcher
+     * @return the watcher or null, if it cannot be used
+     */
+    public static HotFolderWatcher start(FolderimportConfiguration configuration) {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            log.warn("The hot folder watcher cannot be used with S3");
+            return null;
+        }
+        Path root = Paths.get(configuration.getRootFolder());
+        String staging = configuration.getHotFolderStagingFolder();
+        String settings = String.join("|", configuration.getImageNameRules().toString(), String.valueOf(configuration.getScanThreads()),
+                String.valueOf(configuration.getScanDepth()), String.valueOf(configuration.getHotFolderThreads()),
+                String.valueOf(configuration.getHotFolderQuietMinutes()), configuration.getHotFolderSentinel(), staging,
+                String.valueOf(configuration.getHotFolderPollSeconds()), String.valueOf(configuration.getThrottleBytesPerSecond()),
+                String.valueOf(configuration.getThrottleMaxFiles()), String.valueOf(configuration.getThrottleTargetLatency()));
+        HotFolderWatcher watcher = WATCHERS.compute(root, (key, running) -> {
+            if (running != null && !running.stopped && running.settings.equals(settings)) {
+                return running;
+            }
+            if (running != null) {
+                log.info("The configuration of the hot folder {} changed, the watcher is restarted", root);
+                running.stop();
+            }
+            HotFolderWatcher started = new HotFolderWatcher(root, configuration.getImageNameRules(), configuration.getScanThreads(),
+                    configuration.getScanDepth(), configuration.getHotFolderThreads(),
+                    TimeUnit.MINUTES.toMillis(configuration.getHotFolderQuietMinutes()), configuration.getHotFolderSentinel(),
+                    staging == null || staging.isBlank() ? null : Paths.get(staging),
+                    TimeUnit.SECONDS.toMillis(configuration.getHotFolderPollSeconds()), true);
+            started.settings = settings;
+            started.governor = configuration.getIoGovernor();
+            started.startThread();
+            return started;
+        });
+        watcher.lastUsed = System.currentTimeMillis();
+        return watcher;
+    }
+
+    /**
+     * Stop all watchers, their staged images are deleted
+     */
+    public static void stopAll() {
+        for (HotFolderWatcher watcher : new ArrayList<>(WATCHERS.values())) {
+            watcher.stop();
+        }
+    }
+
+    /**
+     * Take the prepared volume for an import. The watcher forgets it, the import has to discard it when it is done.
+     * 
+     * @param rootFolder the root folder of the import
+     * @param volumeFolder the folder of the volume
+     * @param scanDepth the scan depth of the import, the volume must have been scanned with the same depth
+     * @return the prepared volume or null, if the volume is not prepared or changed since then
+     */
+    public static PreparedVolume take(String rootFolder, Path volumeFolder, int scanDepth) {
+        HotFolderWatcher watcher = WATCHERS.get(Paths.get(rootFolder));
+        return watcher == null ? null : watcher.take(volumeFolder, scanDepth);
+    }
+
+    PreparedVolume take(Path volumeFolder, int depth) {
+        lastUsed = System.currentTimeMillis();
+        PreparedVolume prepared = preparedVolumes.remove(volumeFolder);
+        if (prepared != null && prepared.scanDepth != Math.max(1, depth)) {
+            prepared.discard();
+            return null;
+        }
+        return prepared;
+    }
+
+    /**
+     * Stop watching. The thread ends in the background, deletes the staged images and removes the watcher from the running watchers.
+     */
+    void stop() {
+        stopped = true;
+        Thread watching = thread;
+        if (watching != null) {
+            watching.interrupt();
+        }
+    }
+
+    void startThread() {
+        thread = new Thread(this::run, "folderimport-hotfolder");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            openWatchService();
+            log.info("Watching {} for new volumes, {}", rootFolder, watchService == null ? "polling only" : "with watch service");
+            long nextPoll = 0;
+            while (!stopped && !Thread.currentThread().isInterrupted()) {
+                if (System.currentTimeMillis() - lastUsed > IDLE_MILLIS) {
+                    log.info("No import used the hot folder watcher of {} for a day, it is stopped", rootFolder);
+                    break;
+                }
+                waitForEvents(Math.min(CHECK_MILLIS, pollMillis));
+                if (System.currentTimeMillis() >= nextPoll) {
+                    poll();
+                    nextPoll = System.currentTimeMillis() + pollMillis;
+                }
+                prepareCompleteVolumes(System.currentTimeMillis());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            log.debug(e);
+        } finally {
+            stopped = true;
+            WATCHERS.remove(rootFolder, this);
+            closeWatchService();
+            preparer.shutdownNow();
+            for (PreparedVolume prepared : preparedVolumes.values()) {
+                prepared.discard();
+            }
+            preparedVolumes.clear();
+        }
+    }
+
+    /**
+     * Use a watch service on local file systems, it only watches the root folder; the folders created later are registered when they appear
+     */
+    private void openWatchService() {
+        if (!useWatchService) {
+            return;
+        }
+        try {
+            String type = Files.getFileStore(rootFolder).type().toLowerCase(Locale.ROOT);
+            if (REMOTE_FILE_SYSTEMS.contains(type)) {
+                log.info("{} is located on a {} file system, it is polled", rootFolder, type);
+                return;
+            }
+            watchService = rootFolder.getFileSystem().newWatchService();
+            register(rootFolder);
+        } catch (IOException | UnsupportedOperationException e) {
+            log.warn("Cannot watch {}, it is polled: {}", rootFolder, e.getMessage());
+            closeWatchService();
+        }
+    }
+
+    private void register(Path folder) throws IOException {
+        folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+    }
+
+    private void closeWatchService() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.debug(e);
+            }
+            watchService = null;
+        }
+    }
+
+    private void waitForEvents(long millis) throws InterruptedException {
+        if (watchService == null) {
+            Thread.sleep(millis);
+            return;
+        }
+        WatchKey key = watchService.poll(millis, TimeUnit.MILLISECONDS);
+        while (key != null) {
+            handle(key);
+            key = watchService.poll();
+        }
+    }
+
+    private void handle(WatchKey key) {
+        Path folder = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // events were lost, all observed volumes must be complete again
+                log.warn("Too many changes in {}, the prepared volumes are dropped", rootFolder);
+                for (Path volume : new ArrayList<>(versions.keySet())) {
+                    changed(volume);
+                }
+                continue;
+            }
+            Path path = folder.resolve((Path) event.context());
+            Path relative = rootFolder.relativize(path);
+            changed(rootFolder.resolve(relative.getName(0)));
+            // watch new folders down to the folders containing the images, the existing folders are polled
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && relative.getNameCount() <= scanDepth + 1
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    register(path);
+                } catch (IOException e) {
+                    log.warn("Cannot watch {}, it is polled: {}", path, e.getMessage());
+                }
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * List the root folder and start the preparation of the complete volumes, like the watching thread does at the poll interval
+     * 
+     * @param now the current time in milliseconds, a volume is complete if it did not change within the quiet time before
+     * @return the preparations started
+     */
+    List<Future<?>> check(long now) {
+        poll();
+        return prepareCompleteVolumes(now);
+    }
+
+    /**
+     * List the root folder to find new, changed and removed volume folders, then compare the observed volumes with their last signature. Changes
+     * within the structure folders don't change the modification date of the volume folder.
+     */
+    private void poll() {
+        Map<Path, Long> modified = new HashMap<>();
+        try (DirectoryStream<Path> volumes = Files.newDirectoryStream(rootFolder, path -> Files.isDirectory(path))) {
+            for (Path volume : volumes) {
+                modified.put(volume, Files.getLastModifiedTime(volume).toMillis());
+            }
+        } catch (IOException e) {
+            log.warn("Cannot list {}: {}", rootFolder, e.getMessage());
+            return;
+        }
+        if (volumeModified != null) {
+            for (Map.Entry<Path, Long> entry : modified.entrySet()) {
+                if (!entry.getValue().equals(volumeModified.get(entry.getKey()))) {
+                    changed(entry.getKey());
+                }
+            }
+            for (Path volume : volumeModified.keySet()) {
+                if (!modified.containsKey(volume)) {
+                    changed(volume);
+                }
+            }
+        }
+        volumeModified = modified;
+
+        Set<Path> observed = new HashSet<>(changedVolumes.keySet());
+        observed.addAll(preparing);
+        observed.addAll(preparedVolumes.keySet());
+        signatures.keySet().retainAll(observed);
+        for (Path volume : observed) {
+            Long signature = getSignature(volume, 1);
+            Long previous = signatures.put(volume, signature);
+            if (previous != null && !previous.equals(signature)) {
+                changed(volume);
+            }
+        }
+    }
+
+    /**
+     * Sum up the names, sizes and modification dates of all files and folders down to the images, the order of the listing does not matter
+     */
+    private long getSignature(Path folder, int level) {
+        long signature = 0;
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(folder)) {
+            for (Path child : children) {
+                BasicFileAttributes attributes = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                long entry = 31L * child.getFileName().hashCode() + attributes.lastModifiedTime().toMillis();
+                entry = 31L * entry + attributes.size();
+                if (attributes.isDirectory() && level <= scanDepth) {
+                    entry = 31L * entry + getSignature(child, level + 1);
+                }
+                signature += entry;
+            }
+        } catch (IOException e) {
+            // deleted meanwhile, the next poll finds the volume changed
+            return -1;
+        }
+        return signature;
+    }
+
+    private synchronized void changed(Path volume) {
+        changedVolumes.put(volume, System.currentTimeMillis());
+        versions.merge(volume, 1L, Long::sum);
+        PreparedVolume prepared = preparedVolumes.remove(volume);
+        if (prepared != null) {
+            prepared.discard();
+        }
+    }
+
+    private List<Future<?>> prepareCompleteVolumes(long now) {
+        List<Future<?>> started = new ArrayList<>();
+        Iterator<Map.Entry<Path, Long>> iterator = changedVolumes.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, Long> entry = iterator.next();
+            Path volume = entry.getKey();
+            if (!Files.isDirectory(volume)) {
+                // deleted or a file in the root folder
+                iterator.remove();
+                versions.remove(volume);
+            } else if (!preparing.contains(volume) && ((!sentinel.isEmpty() && Files.exists(volume.resolve(sentinel)))
+                    || (quietMillis > 0 && now - entry.getValue() >= quietMillis))) {
+                iterator.remove();
+                preparing.add(volume);
+                started.add(preparer.submit(() -> {
+                    try {
+                        prepare(volume);
+                    } catch (IOException e) {
+                        log.error("Cannot prepare {}", volume, e);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        preparing.remove(volume);
+                    }
+                    return null;
+                }));
+            }
+        }
+        return started;
+    }
+
+    /**
+     * Scan the volume and calculate the checksums of its images, copy them into the staging folder if it is configured. The prepared volume is
+     * kept for the import unless the volume changed meanwhile.
+     * 
+     * @param volume the folder of the volume
+     * @return the prepared volume or null, if the volume changed meanwhile
+     * @throws IOException if an image cannot be read or staged
+     * @throws InterruptedException if the thread was interrupted
+     */
+    PreparedVolume prepare(Path volume) throws IOException, InterruptedException {
+        Long version = versions.get(volume);
+        long start = System.nanoTime();
+        PreparedVolume prepared = new PreparedVolume(new VolumeScanner(scanThreads, scanDepth).scan(volume), scanDepth,
+                stagingFolder == null ? null : stagingFolder.resolve(volume.getFileName() + "_" + (version == null ? 0 : version)));
+        try {
+            VolumeSnapshot snapshot = prepared.getSnapshot();
+            for (String folderName : snapshot.getFolderNames()) {
+                List<Path> images = snapshot.getImages(folderName);
+                for (int i = 0; i < images.size(); i++) {
+                    if (!isUnchanged(volume, version)) {
+                        prepared.discard();
+                        return null;
+                    }
+                    Path image = images.get(i);
+                    if (imageNameRules.accept(image.getFileName().toString())) {
+                        prepared.images.put(image, prepareImage(volume, image, snapshot.getSize(folderName, i), prepared.stagingVolume));
+                    }
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            prepared.discard();
+            throw e;
+        }
+        synchronized (this) {
+            if (!isUnchanged(volume, version)) {
+                prepared.discard();
+                return null;
+            }
+            preparedVolumes.put(volume, prepared);
+        }
+        log.info("Prepared {} images of {} in {} ms", prepared.images.size(), volume, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return prepared;
+    }
+
+    private boolean isUnchanged(Path volume, Long version) {
+        Long current = versions.get(volume);
+        return version == null ? current == null : version.equals(current);
+    }
+
+    /**
+     * Read the image once, calculate its checksums and write the staged copy if a staging folder is used. The I/O counts for the limits of the
+     * I/O governor like the imports.
+     */
+    private ImageTransfer prepareImage(Path volume, Path image, long size, Path stagingVolume) throws IOException, InterruptedException {
+        Path staged = stagingVolume == null ? null : stagingVolume.resolve(volume.relativize(image).toString());
+        ImageTransfer prepared = new ImageTransfer(image, staged);
+        prepared.setSize(size < 0 ? StorageProvider.getInstance().getFileSize(image) : size);
+        governor.acquireFile();
+        long begin = System.nanoTime();
+        try (InputStream in = governor.throttle(StorageProvider.getInstance().newInputStream(image))) {
+            if (staged == null) {
+                FixityManifest.copy(in, null, prepared);
+            } else {
+                Files.createDirectories(staged.getParent());
+                try (OutputStream out = Files.newOutputStream(staged)) {
+                    FixityManifest.copy(in, out, prepared);
+                }
+            }
+        } finally {
+            governor.releaseFile(prepared.getSize(), System.nanoTime() - begin);
+        }
+        return prepared;
+    }
+
+    /**
+     * A volume scanned by the watcher, with the checksums of its images and their staged copies
+     */
+    public static class PreparedVolume {
+
+        // snapshot of the volume at the time it was complete
+        private final VolumeSnapshot snapshot;
+
+        private final int scanDepth;
+
+        // folder of the staged images of this preparation, null if the images were not staged
+        private final Path stagingVolume;
+
+        // source image -> size, checksums and staged copy
+        private final Map<Path, ImageTransfer> images = new ConcurrentHashMap<>();
+
+        PreparedVolume(VolumeSnapshot snapshot, int scanDepth, Path stagingVolume) {
+            this.snapshot = snapshot;
+            this.scanDepth = scanDepth;
+            this.stagingVolume = stagingVolume;
+        }
+
+        public VolumeSnapshot getSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Store the checksums and the staged copies of the prepared images in the transfers of the import
+         * 
+         * @param transfers the planned transfers
+         * @return the number of transfers with a prepared image
+         */
+        public int apply(List<ImageTransfer> transfers) {
+            int count = 0;
+            for (ImageTransfer transfer : transfers) {
+                ImageTransfer prepared = images.get(transfer.getSource());
+                if (prepared != null && prepared.getSize() == transfer.getSize()) {
+                    transfer.setChecksum(prepared.getChecksum());
+                    transfer.setMd5(prepared.getMd5());
+                    if (prepared.getDestination() != null && Files.exists(prepared.getDestination())) {
+                        transfer.setStagedSource(prepared.getDestination());
+                    }
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Delete the staged images that were not moved into a master folder
+         */
+        public void discard() {
+            if (stagingVolume == null || !Files.exists(stagingVolume)) {
+                return;
+            }
+            if (!StorageProvider.getInstance().deleteDir(stagingVolume)) {
+                log.warn("Cannot delete the staged images in {}", stagingVolume);
+            }
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Technical metadata of an image, read from its header. Values that are not contained in the header are 0.
+ */
+@Getter
+@Setter
+public class ImageInfo {
+
+    // image/tiff, image/jpeg or image/jp2
+    private String mimetype;
+
+    // size in pixels
+    private int width;
+    private int height;
+
+    // resolution in dots per inch
+    private double xResolution;
+    private double yResolution;
+
+    private int bitsPerSample;
+    private int samplesPerPixel;
+
+    public ImageInfo(String mimetype) {
+        this.mimetype = mimetype;
+    }
+}
@@ -0,0 +1,206 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which files of a structure folder are imported as pages and how they are renamed. All rules are compiled once when the configuration is
+ * read. Simple rules like file names or extensions are checked without regular expressions.
+ */
+public class ImageNameRules {
+
+    // files that are never pages, used if nothing is configured
+    public static final List<String> DEFAULT_EXCLUDES = List.of("Thumbs.db", ".DS_Store", "desktop.ini", "._*");
+
+    // characters replaced by default, handled without a regular expression
+    public static final String DEFAULT_RENAME_PATTERN = "[^\\w.]";
+
+    private final Rules includes;
+    private final Rules excludes;
+
+    // characters to replace in the new file name, null to use the default rule
+    private final Pattern renamePattern;
+    private final String replacement;
+
+    // the configured rules, used to compare two configurations
+    private final String description;
+
+    /**
+     * @param includes glob patterns of the files to import, an empty list imports all files
+     * @param excludes glob patterns of the files to ignore
+     * @param renamePattern regular expression of the characters to replace in the new file name, empty for
+     *            {@link #DEFAULT_RENAME_PATTERN}
+     * @param replacement replacement of the characters
+     */
+    public ImageNameRules(List<String> includes, List<String> excludes, String renamePattern, String replacement) {
+        this.includes = new Rules(includes);
+        this.excludes = new Rules(excludes);
+        if (renamePattern == null || renamePattern.isEmpty() || DEFAULT_RENAME_PATTERN.equals(renamePattern)) {
+            this.renamePattern = null;
+        } else {
+            this.renamePattern = Pattern.compile(renamePattern);
+        }
+        this.replacement = replacement == null ? "_" : replacement;
+        description = "include=" + includes + " exclude=" + excludes + " rename=" + renamePattern + " replacement=" + this.replacement;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    /**
+     * Check if a file is imported as a page
+     * 
+     * @param fileName name of the file
+     * @return true if the file matches the includes and none of the excludes
+     */
+    public boolean accept(String fileName) {
+        return (includes.isEmpty() || includes.matches(fileName)) && !excludes.matches(fileName);
+    }
+
+    /**
+     * Replace all characters that are not allowed in the new file name
+     * 
+     * @param name the new file name
+     * @return the sanitised name, the same instance if nothing was replaced
+     */
+    public String sanitise(String name) {
+        if (renamePattern != null) {
+            return renamePattern.matcher(name).replaceAll(replacement);
+        }
+        int length = name.length();
+        int i = 0;
+        while (i < length && isAllowed(name.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return name;
+        }
+        StringBuilder sb = new StringBuilder(length + 8);
+        sb.append(name, 0, i);
+        for (; i < length; i++) {
+            char c = name.charAt(i);
+            if (isAllowed(c)) {
+                sb.append(c);
+            } else {
+                sb.append(replacement);
+            }
+        }
+        return sb.toString();
+    }
+
+    // same as [\w.]
+    private static boolean isAllowed(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '.';
+    }
+
+    /**
+     * A list of compiled glob patterns. Patterns without wildcards are compared by name, patterns like *.tif by extension, all others are compiled
+     * into regular expressions. The comparison ignores case.
+     */
+    private static class Rules {
+
+        private final Set<String> names = new HashSet<>();
+        private final List<String> extensions = new ArrayList<>();
+        private final List<Pattern> patterns = new ArrayList<>();
+
+        Rules(List<String> globs) {
+            for (String glob : globs) {
+                String rule = glob.trim();
+                if (rule.isEmpty()) {
+                    continue;
+                }
+                String lower = rule.toLowerCase(Locale.ROOT);
+                if (!hasWildcard(rule)) {
+                    names.add(lower);
+                } else if (lower.startsWith("*.") && !hasWildcard(lower.substring(2))) {
+                    extensions.add(lower.substring(1));
+                } else {
+                    patterns.add(Pattern.compile(toRegex(rule), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return names.isEmpty() && extensions.isEmpty() && patterns.isEmpty();
+        }
+
+        boolean matches(String fileName) {
+            if (!names.isEmpty() && names.contains(fileName.toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+            for (String extension : extensions) {
+                if (fileName.regionMatches(true, fileName.length() - extension.length(), extension, 0, extension.length())) {
+                    return true;
+                }
+            }
+            for (Pattern pattern : patterns) {
+                if (pattern.matcher(fileName).matches()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean hasWildcard(String rule) {
+            return rule.indexOf('*') != -1 || rule.indexOf('?') != -1 || rule.indexOf('[') != -1 || rule.indexOf('{') != -1;
+        }
+
+        private static String toRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            boolean inGroup = false;
+            for (char c : glob.toCharArray()) {
+                switch (c) {
+                    case '*':
+                        regex.append(".*");
+                        break;
+                    case '?':
+                        regex.append('.');
+                        break;
+                    case '[':
+                    case ']':
+                        regex.append(c);
+                        break;
+                    case '{':
+                        regex.append("(?:");
+                        inGroup = true;
+                        break;
+                    case '}':
+                        regex.append(')');
+                        inGroup = false;
+                        break;
+                    case ',':
+                        regex.append(inGroup ? "|" : ",");
+                        break;
+                    default:
+                        regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
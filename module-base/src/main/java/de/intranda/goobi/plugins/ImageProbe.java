@@ -0,0 +1,362 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Reads size, resolution and sample format from the headers of TIFF, JPEG and JP2 images without decoding them. The file in the master folder is
+ * probed by the worker that has just written it, so the header is read from the page cache. Local files are read at the positions of the header
+ * structures only, from S3 only the first {@link #HEADER_SIZE} bytes are read. The result is stored in the transfer.
+ */
+@Log4j2
+public class ImageProbe implements TransferListener {
+
+    // bytes read from the beginning of a file that cannot be read at arbitrary positions
+    static final int HEADER_SIZE = 65536;
+
+    // JPEG segments and JP2 boxes are only searched within this range
+    private static final long MAX_SCAN = 1024 * 1024;
+
+    private static final int TIFF_WIDTH = 256;
+    private static final int TIFF_HEIGHT = 257;
+    private static final int TIFF_BITS_PER_SAMPLE = 258;
+    private static final int TIFF_SAMPLES_PER_PIXEL = 277;
+    private static final int TIFF_X_RESOLUTION = 282;
+    private static final int TIFF_Y_RESOLUTION = 283;
+    private static final int TIFF_RESOLUTION_UNIT = 296;
+
+    @Override
+    public void transferred(ImageTransfer transfer) {
+        transfer.setImageInfo(probe(transfer.getDestination()));
+    }
+
+    /**
+     * Read the header of an image
+     * 
+     * @param image the image
+     * @return the technical metadata, null if the file is not a TIFF, JPEG or JP2 image or cannot be read
+     */
+    public static ImageInfo probe(Path image) {
+        try {
+            if (ConfigurationHelper.getInstance().useS3()) {
+                byte[] header = new byte[HEADER_SIZE];
+                int length = 0;
+                try (InputStream in = StorageProvider.getInstance().newInputStream(image)) {
+                    int read;
+                    while (length < header.length && (read = in.read(header, length, header.length - length)) != -1) {
+                        length += read;
+                    }
+                }
+                return probe(new Header(header, length));
+            }
+            try (FileChannel channel = FileChannel.open(image, StandardOpenOption.READ)) {
+                return probe(new Header(channel));
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Cannot read the header of {}: {}", image, e.getMessage());
+            return null;
+        }
+    }
+
+    static ImageInfo probe(Header header) throws IOException {
+        byte[] start = header.read(0, 12);
+        if (start == null) {
+            return null;
+        }
+        if ((start[0] == 'I' && start[1] == 'I' || start[0] == 'M' && start[1] == 'M')) {
+            return probeTiff(header, start[0] == 'I');
+        }
+        if ((start[0] & 0xFF) == 0xFF && (start[1] & 0xFF) == 0xD8) {
+            return probeJpeg(header);
+        }
+        if (start[4] == 'j' && start[5] == 'P' && start[6] == ' ' && start[7] == ' ') {
+            return probeJp2(header);
+        }
+        return null;
+    }
+
+    private static ImageInfo probeTiff(Header header, boolean littleEndian) throws IOException {
+        ImageInfo info = new ImageInfo("image/tiff");
+        byte[] start = header.read(0, 8);
+        // 43 is BigTIFF, only the type is known
+        if (readShort(start, 2, littleEndian) != 42) {
+            return info;
+        }
+        long ifd = readInt(start, 4, littleEndian);
+        byte[] countBytes = header.read(ifd, 2);
+        if (countBytes == null) {
+            return info;
+        }
+        int count = readShort(countBytes, 0, littleEndian);
+        byte[] entries = header.read(ifd + 2, count * 12);
+        if (entries == null) {
+            return info;
+        }
+        int resolutionUnit = 2;
+        for (int i = 0; i < count; i++) {
+            int offset = i * 12;
+            int tag = readShort(entries, offset, littleEndian);
+            int type = readShort(entries, offset + 2, littleEndian);
+            long valueCount = readInt(entries, offset + 4, littleEndian);
+            switch (tag) {
+                case TIFF_WIDTH:
+                    info.setWidth((int) readTiffValue(entries, offset, type, littleEndian));
+                    break;
+                case TIFF_HEIGHT:
+                    info.setHeight((int) readTiffValue(entries, offset, type, littleEndian));
+                    break;
+                case TIFF_BITS_PER_SAMPLE:
+                    // the value is stored in the entry if it fits into 4 bytes, otherwise the entry contains its offset
+                    if (valueCount <= 2) {
+                        info.setBitsPerSample(readShort(entries, offset + 8, littleEndian));
+                    } else {
+                        byte[] bits = header.read(readInt(entries, offset + 8, littleEndian), 2);
+                        info.setBitsPerSample(bits == null ? 0 : readShort(bits, 0, littleEndian));
+                    }
+                    break;
+                case TIFF_SAMPLES_PER_PIXEL:
+                    info.setSamplesPerPixel((int) readTiffValue(entries, offset, type, littleEndian));
+                    break;
+                case TIFF_X_RESOLUTION:
+                    info.setXResolution(readRational(header, readInt(entries, offset + 8, littleEndian), littleEndian));
+                    break;
+                case TIFF_Y_RESOLUTION:
+                    info.setYResolution(readRational(header, readInt(entries, offset + 8, littleEndian), littleEndian));
+                    break;
+                case TIFF_RESOLUTION_UNIT:
+                    resolutionUnit = (int) readTiffValue(entries, offset, type, littleEndian);
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (info.getSamplesPerPixel() == 0 && info.getWidth() > 0) {
+            info.setSamplesPerPixel(1);
+        }
+        if (resolutionUnit == 3) {
+            // centimetre
+            info.setXResolution(info.getXResolution() * 2.54);
+            info.setYResolution(info.getYResolution() * 2.54);
+        } else if (resolutionUnit != 2) {
+            info.setXResolution(0);
+            info.setYResolution(0);
+        }
+        return info;
+    }
+
+    private static long readTiffValue(byte[] entries, int offset, int type, boolean littleEndian) {
+        // SHORT values are stored in the first two bytes of the value field
+        return type == 3 ? readShort(entries, offset + 8, littleEndian) : readInt(entries, offset + 8, littleEndian);
+    }
+
+    private static double readRational(Header header, long position, boolean littleEndian) throws IOException {
+        byte[] rational = header.read(position, 8);
+        if (rational == null) {
+            return 0;
+        }
+        long denominator = readInt(rational, 4, littleEndian);
+        return denominator == 0 ? 0 : (double) readInt(rational, 0, littleEndian) / denominator;
+    }
+
+    private static ImageInfo probeJpeg(Header header) throws IOException {
+        ImageInfo info = new ImageInfo("image/jpeg");
+        long position = 2;
+        while (position < MAX_SCAN) {
+            byte[] marker = header.read(position, 4);
+            if (marker == null || (marker[0] & 0xFF) != 0xFF) {
+                break;
+            }
+            int type = marker[1] & 0xFF;
+            int length = readShort(marker, 2, false);
+            if (type == 0xE0) {
+                // APP0 JFIF: identifier, version, units, x density, y density
+                byte[] jfif = header.read(position + 4, 12);
+                if (jfif != null && new String(jfif, 0, 4, StandardCharsets.US_ASCII).equals("JFIF")) {
+                    int units = jfif[7] & 0xFF;
+                    double factor = units == 1 ? 1 : units == 2 ? 2.54 : 0;
+                    info.setXResolution(readShort(jfif, 8, false) * factor);
+                    info.setYResolution(readShort(jfif, 10, false) * factor);
+                }
+            } else if (type >= 0xC0 && type <= 0xCF && type != 0xC4 && type != 0xC8 && type != 0xCC) {
+                // start of frame: precision, height, width, components
+                byte[] frame = header.read(position + 4, 6);
+                if (frame != null) {
+                    info.setBitsPerSample(frame[0] & 0xFF);
+                    info.setHeight(readShort(frame, 1, false));
+                    info.setWidth(readShort(frame, 3, false));
+                    info.setSamplesPerPixel(frame[5] & 0xFF);
+                }
+                break;
+            }
+            position += 2 + length;
+        }
+        return info;
+    }
+
+    private static ImageInfo probeJp2(Header header) throws IOException {
+        ImageInfo info = new ImageInfo("image/jp2");
+        probeJp2Boxes(header, 0, MAX_SCAN, info);
+        return info;
+    }
+
+    private static void probeJp2Boxes(Header header, long position, long end, ImageInfo info) throws IOException {
+        while (position < end) {
+            byte[] box = header.read(position, 8);
+            if (box == null) {
+                return;
+            }
+            long length = readInt(box, 0, false);
+            String type = new String(box, 4, 4, StandardCharsets.US_ASCII);
+            int headerLength = 8;
+            if (length == 1) {
+                byte[] extended = header.read(position + 8, 8);
+                if (extended == null) {
+                    return;
+                }
+                length = readInt(extended, 0, false) << 32 | readInt(extended, 4, false);
+                headerLength = 16;
+            } else if (length == 0) {
+                length = end - position;
+            }
+            if (length < headerLength) {
+                return;
+            }
+            long content = position + headerLength;
+            switch (type) {
+                case "jp2h":
+                case "res ":
+                    probeJp2Boxes(header, content, Math.min(end, position + length), info);
+                    break;
+                case "ihdr":
+                    // height, width, components, bits per component
+                    byte[] ihdr = header.read(content, 11);
+                    if (ihdr != null) {
+                        info.setHeight((int) readInt(ihdr, 0, false));
+                        info.setWidth((int) readInt(ihdr, 4, false));
+                        info.setSamplesPerPixel(readShort(ihdr, 8, false));
+                        info.setBitsPerSample((ihdr[10] & 0x7F) + 1);
+                    }
+                    break;
+                case "resc":
+                case "resd":
+                    // capture resolution is preferred to the display resolution
+                    if ("resc".equals(type) || info.getXResolution() == 0) {
+                        byte[] res = header.read(content, 10);
+                        if (res != null) {
+                            info.setYResolution(toDpi(readShort(res, 0, false), readShort(res, 2, false), res[8]));
+                            info.setXResolution(toDpi(readShort(res, 4, false), readShort(res, 6, false), res[9]));
+                        }
+                    }
+                    break;
+                case "jp2c":
+                    // the code stream follows, the header is complete
+                    return;
+                default:
+                    break;
+            }
+            position += length;
+        }
+    }
+
+    /**
+     * Convert a JP2 resolution in pixels per metre, numerator / denominator * 10^exponent, to dots per inch
+     */
+    private static double toDpi(int numerator, int denominator, byte exponent) {
+        if (denominator == 0) {
+            return 0;
+        }
+        return (double) numerator / denominator * Math.pow(10, exponent) * 0.0254;
+    }
+
+    private static int readShort(byte[] data, int offset, boolean littleEndian) {
+        int first = data[offset] & 0xFF;
+        int second = data[offset + 1] & 0xFF;
+        return littleEndian ? second << 8 | first : first << 8 | second;
+    }
+
+    private static long readInt(byte[] data, int offset, boolean littleEndian) {
+        long value = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = data[littleEndian ? offset + 3 - i : offset + i] & 0xFF;
+            value = value << 8 | b;
+        }
+        return value;
+    }
+
+    /**
+     * The bytes of an image, either read at arbitrary positions from a file channel or from a buffer containing the beginning of the file
+     */
+    static class Header {
+
+        private final FileChannel channel;
+
+        private final byte[] buffer;
+        private final int length;
+
+        Header(FileChannel channel) {
+            this.channel = channel;
+            buffer = null;
+            length = 0;
+        }
+
+        Header(byte[] buffer, int length) {
+            channel = null;
+            this.buffer = buffer;
+            this.length = length;
+        }
+
+        /**
+         * Read bytes at a position
+         * 
+         * @return the bytes or null, if the file ends before or the range is too large for a header structure
+         */
+        byte[] read(long position, int count) throws IOException {
+            if (position < 0 || count < 0 || count > HEADER_SIZE) {
+                return null;
+            }
+            if (channel == null) {
+                if (position + count > length) {
+                    return null;
+                }
+                byte[] result = new byte[count];
+                System.arraycopy(buffer, (int) position, result, 0, count);
+                return result;
+            }
+            ByteBuffer result = ByteBuffer.allocate(count);
+            while (result.hasRemaining()) {
+                if (channel.read(result, position + result.position()) == -1) {
+                    return null;
+                }
+            }
+            return result.array();
+        }
+    }
+}
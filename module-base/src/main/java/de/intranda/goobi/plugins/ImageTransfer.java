@@ -0,0 +1,71 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.nio.file.Path;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A single planned image transfer from the import folder into the master folder of the process.
+ */
+@Getter
+public class ImageTransfer {
+
+    // source file in the import folder
+    private final Path source;
+
+    // renamed file in the master folder
+    private final Path destination;
+
+    // copy of the source prepared by the hot folder watcher, null if the image was not staged
+    @Setter
+    private Path stagedSource;
+
+    // true if the file was copied by the copy engine, its source is removed after the sync when it is moved
+    @Setter
+    private boolean copied;
+
+    // size of the source file in bytes, -1 if it is not known yet
+    @Setter
+    private long size = -1;
+
+    // sha256 checksum of the transferred file
+    @Setter
+    private String checksum;
+
+    // md5 checksum of the transferred file
+    @Setter
+    private String md5;
+
+    // duration of the transfer in nanoseconds, including the checksum calculation
+    @Setter
+    private long durationNanos;
+
+    // technical metadata read from the header of the transferred image, null if it was not probed
+    @Setter
+    private ImageInfo imageInfo;
+
+    public ImageTransfer(Path source, Path destination) {
+        this.source = source;
+        this.destination = destination;
+    }
+}
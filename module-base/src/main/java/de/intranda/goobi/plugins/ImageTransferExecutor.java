@@ -0,0 +1,266 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang.SystemUtils;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Executes the planned image transfers of an import on a bounded pool of worker threads. The largest images are started first, so the import does
+ * not end with a few workers copying large files while the others are idle. The page order is not affected by this.
+ */
+@Log4j2
+public class ImageTransferExecutor {
+
+    private final int threads;
+
+    private final TransferStrategy strategy;
+
+    private final CopyEngine copyEngine;
+
+    private final List<TransferListener> listeners = new ArrayList<>();
+
+    // remember for each pair of folders if they are located on the same file store
+    private final Map<String, Boolean> sameFileStore = new ConcurrentHashMap<>();
+
+    public ImageTransferExecutor(int threads, TransferStrategy strategy) {
+        this(threads, strategy, CopyEngine.stream());
+    }
+
+    public ImageTransferExecutor(int threads, TransferStrategy strategy, CopyEngine copyEngine) {
+        this.threads = Math.max(1, threads);
+        this.strategy = strategy;
+        this.copyEngine = copyEngine;
+    }
+
+    public void addListener(TransferListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Transfer all planned images using the configured strategy. The method blocks until every transfer has finished.
+     * 
+     * @param transfers the planned transfers
+     * @return the transfers that could not be executed, an empty list if everything was copied
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the workers
+     */
+    public List<ImageTransfer> execute(List<ImageTransfer> transfers) throws InterruptedException {
+        List<ImageTransfer> failed = Collections.synchronizedList(new ArrayList<>());
+        if (transfers.isEmpty()) {
+            return failed;
+        }
+        // the workers take the next transfer from a shared queue, sorted by size; equal sizes keep the page order
+        List<ImageTransfer> schedule = new ArrayList<>(transfers);
+        schedule.sort(Comparator.comparingLong(ImageTransfer::getSize).reversed());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, schedule.size()));
+        try {
+            List<Future<?>> futures = new ArrayList<>(schedule.size());
+            for (ImageTransfer transfer : schedule) {
+                futures.add(executor.submit(() -> {
+                    long start = System.nanoTime();
+                    List<ImageTransfer> completed = transfer(transfer);
+                    transfer.setDurationNanos(System.nanoTime() - start);
+                    completed(completed, failed);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).get();
+                } catch (ExecutionException e) {
+                    log.error("Cannot copy {} to {}", schedule.get(i).getSource(), schedule.get(i).getDestination(), e.getCause());
+                    failed.add(schedule.get(i));
+                }
+            }
+            // sync the files of the last incomplete batch
+            completed(copyEngine.flush(), failed);
+            failed.addAll(copyEngine.takeSyncFailures());
+        } finally {
+            executor.shutdownNow();
+        }
+        return failed;
+    }
+
+    /**
+     * Notify the listeners about complete transfers. Copied files are complete once they were synced, so the journal never marks a file as done
+     * that may be lost.
+     */
+    private void completed(List<ImageTransfer> completed, List<ImageTransfer> failed) {
+        for (ImageTransfer transfer : completed) {
+            try {
+                if (transfer.isCopied() && strategy == TransferStrategy.MOVE) {
+                    // different file stores, remove the source after it was copied
+                    StorageProvider.getInstance().deleteFile(transfer.getSource());
+                }
+                for (TransferListener listener : listeners) {
+                    listener.transferred(transfer);
+                }
+            } catch (IOException e) {
+                log.error("Cannot complete the transfer of {} to {}", transfer.getSource(), transfer.getDestination(), e);
+                failed.add(transfer);
+            }
+        }
+    }
+
+    /**
+     * Execute the transfer
+     * 
+     * @return the transfers complete now, copies may wait for the sync of their batch
+     */
+    private List<ImageTransfer> transfer(ImageTransfer transfer) throws IOException, InterruptedException {
+        Path source = transfer.getSource();
+        Path destination = transfer.getDestination();
+        transfer.setCopied(false);
+        if (transfer.getStagedSource() != null && moveStaged(transfer)) {
+            if (strategy == TransferStrategy.MOVE) {
+                StorageProvider.getInstance().deleteFile(source);
+            }
+            return Collections.singletonList(transfer);
+        }
+        if (strategy != TransferStrategy.COPY && isSameFileStore(source, destination)) {
+            Files.deleteIfExists(destination);
+            switch (strategy) {
+                case HARDLINK:
+                    Files.createLink(destination, source);
+                    return Collections.singletonList(transfer);
+                case MOVE:
+                    Files.move(source, destination, StandardCopyOption.ATOMIC_MOVE);
+                    return Collections.singletonList(transfer);
+                case REFLINK_OR_COPY:
+                    if (reflink(source, destination)) {
+                        return Collections.singletonList(transfer);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        transfer.setCopied(true);
+        return copy(transfer);
+    }
+
+    /**
+     * Copy the image within the limits of the I/O governor, it limits the copies of all imports running in this JVM. Links and moves within a file
+     * store are not limited, they hardly read or write any data.
+     */
+    private List<ImageTransfer> copy(ImageTransfer transfer) throws IOException, InterruptedException {
+        IoGovernor governor = copyEngine.getGovernor();
+        governor.acquireFile();
+        long duration = -1;
+        try {
+            long start = System.nanoTime();
+            List<ImageTransfer> completed = copyEngine.copy(transfer);
+            duration = System.nanoTime() - start;
+            return completed;
+        } finally {
+            governor.releaseFile(transfer.getSize(), duration);
+        }
+    }
+
+    /**
+     * Move the copy staged by the hot folder watcher into the master folder. If it is located on another file store or was removed meanwhile,
+     * false is returned and the source is transferred instead.
+     */
+    private boolean moveStaged(ImageTransfer transfer) {
+        Path staged = transfer.getStagedSource();
+        try {
+            if (isSameFileStore(staged, transfer.getDestination())) {
+                Files.deleteIfExists(transfer.getDestination());
+                Files.move(staged, transfer.getDestination(), StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }
+        } catch (IOException e) {
+            log.debug("Staged image {} cannot be used: {}", staged, e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Check if the source file and the destination folder are located on the same local file store. This is never the case if S3 is used.
+     */
+    private boolean isSameFileStore(Path source, Path destination) throws IOException {
+        if (ConfigurationHelper.getInstance().useS3()) {
+            return false;
+        }
+        Path sourceFolder = source.getParent();
+        Path destinationFolder = destination.getParent();
+        String key = sourceFolder + "|" + destinationFolder;
+        Boolean same = sameFileStore.get(key);
+        if (same == null) {
+            Files.createDirectories(destinationFolder);
+            same = getFileStore(sourceFolder).equals(getFileStore(destinationFolder));
+            sameFileStore.put(key, same);
+        }
+        return same;
+    }
+
+    /**
+     * Get the file store of a local folder
+     */
+    FileStore getFileStore(Path folder) throws IOException {
+        return Files.getFileStore(folder);
+    }
+
+    /**
+     * Java has no API for copy-on-write clones, on linux cp is used for it. If the file system does not support it, false is returned.
+     */
+    private boolean reflink(Path source, Path destination) {
+        if (!SystemUtils.IS_OS_LINUX) {
+            return false;
+        }
+        try {
+            Process cp = new ProcessBuilder("cp", "--reflink=always", source.toString(), destination.toString()).redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            if (cp.waitFor() == 0) {
+                return true;
+            }
+        } catch (IOException e) {
+            log.debug(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            Files.deleteIfExists(destination);
+        } catch (IOException e) {
+            log.debug(e);
+        }
+        return false;
+    }
+}
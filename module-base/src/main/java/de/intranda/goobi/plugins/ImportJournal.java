@@ -0,0 +1,267 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Journal of an import, stored next to the metadata file of the process. It records the planned and the completed transfers with their checksums,
+ * so an interrupted import can be restarted and only transfers the missing images.
+ * 
+ * Each line contains tab separated values:
+ * 
+ * <pre>
+ * PLANNED  file name  source  size
+ * DONE     file name  size    sha256 checksum  md5 checksum
+ * SUMMARY  metrics of the import
+ * FINISHED
+ * </pre>
+ */
+@Log4j2
+public class ImportJournal implements TransferListener {
+
+    public static final String FILENAME = "folderimport_journal.txt";
+
+    private static final String PLANNED = "PLANNED";
+    private static final String DONE = "DONE";
+    private static final String SUMMARY = "SUMMARY";
+    private static final String FINISHED = "FINISHED";
+
+    private final Path journalFile;
+
+    // the journal existed before, a previous import was started
+    @Getter
+    private final boolean previousImport;
+
+    // file name -> journal line of completed transfers of the previous import
+    private final Map<String, String[]> completed = new HashMap<>();
+
+    // file name -> source of the planned transfers of the previous import
+    private final Map<String, Path> plannedSources = new HashMap<>();
+
+    // the previous import was completed, its transfers are only reused for images known to be unchanged
+    private boolean finished;
+
+    private BufferedWriter writer;
+
+    private ImportJournal(Path journalFile, boolean previousImport) {
+        this.journalFile = journalFile;
+        this.previousImport = previousImport;
+    }
+
+    /**
+     * Open the journal of a process and read the transfers completed by a previous import. Only an interrupted import is continued, if the journal
+     * ends with FINISHED, the next import transfers all images again.
+     * 
+     * @param processDataDirectory folder of the process containing the metadata file
+     * @return the journal
+     * @throws IOException if an existing journal cannot be read
+     */
+    public static ImportJournal open(String processDataDirectory) throws IOException {
+        Path file = Paths.get(processDataDirectory, FILENAME);
+        StorageProvider storage = StorageProvider.getInstance();
+        ImportJournal journal = new ImportJournal(file, storage.isFileExists(file));
+        if (journal.previousImport) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(storage.newInputStream(file), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (PLANNED.equals(fields[0]) && fields.length == 4) {
+                        journal.plannedSources.put(fields[1], Paths.get(fields[2]));
+                    } else if (DONE.equals(fields[0]) && fields.length == 5) {
+                        journal.completed.put(fields[1], fields);
+                    } else if (FINISHED.equals(fields[0])) {
+                        journal.finished = true;
+                    }
+                }
+            }
+        }
+        return journal;
+    }
+
+    /**
+     * Move the images that an interrupted import has already moved into the master folder back to their source. The structure is created from
+     * the volume folder, without them their pages would be missing. The images are moved again by the next transfer.
+     * 
+     * @param masterFolder the master folder of the process
+     * @return the number of images moved back
+     * @throws IOException if an image cannot be moved back
+     */
+    public int restoreMovedImages(Path masterFolder) throws IOException {
+        if (!previousImport || finished) {
+            return 0;
+        }
+        StorageProvider storage = StorageProvider.getInstance();
+        int restored = 0;
+        for (String fileName : completed.keySet()) {
+            Path source = plannedSources.get(fileName);
+            Path destination = masterFolder.resolve(fileName);
+            if (source != null && !storage.isFileExists(source) && storage.isFileExists(destination)) {
+                storage.move(destination, source);
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Start a new import. The journal is written again. If the previous import was interrupted, its completed transfers are kept if their file in
+     * the master folder still has the recorded size and checksum. After a finished import all images are transferred again.
+     * 
+     * @param transfers all planned transfers of the import
+     * @return the transfers that still need to be executed
+     * @throws IOException if the journal cannot be written
+     */
+    public List<ImageTransfer> plan(List<ImageTransfer> transfers) throws IOException {
+        return plan(transfers, null);
+    }
+
+    /**
+     * Start a new import. The journal is written again. If unchanged is null and the previous import was interrupted, its completed transfers
+     * are kept if their file in the master folder still has the recorded size and checksum. Otherwise only the unchanged transfers are kept,
+     * their checksums are taken from the journal or calculated from the master folder, all other transfers are executed again.
+     * 
+     * @param transfers all planned transfers of the import
+     * @param unchanged transfers whose file in the master folder is up to date, null to continue an interrupted import
+     * @return the transfers that still need to be executed
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized List<ImageTransfer> plan(List<ImageTransfer> transfers, Set<ImageTransfer> unchanged) throws IOException {
+        List<ImageTransfer> pending = new ArrayList<>();
+        writer = new BufferedWriter(new OutputStreamWriter(StorageProvider.getInstance().newOutputStream(journalFile), StandardCharsets.UTF_8));
+        for (ImageTransfer transfer : transfers) {
+            // the size is usually read while the volume is scanned
+            long size = transfer.getSize() < 0 ? StorageProvider.getInstance().getFileSize(transfer.getSource()) : transfer.getSize();
+            transfer.setSize(size);
+            write(PLANNED, transfer.getDestination().getFileName().toString(), transfer.getSource().toString(), String.valueOf(size));
+        }
+        for (ImageTransfer transfer : transfers) {
+            // a finished import is not continued, the images may have been scanned again with the same size
+            String[] done = finished && unchanged == null ? null : completed.get(transfer.getDestination().getFileName().toString());
+            if (unchanged != null && !unchanged.contains(transfer)) {
+                pending.add(transfer);
+            } else if (done != null && isValid(transfer, done, unchanged == null)
+                    && (transfer.getChecksum() == null || transfer.getChecksum().equals(done[3]))) {
+                transfer.setChecksum(done[3]);
+                transfer.setMd5(done[4]);
+                write(done);
+            } else if (unchanged != null) {
+                if (transfer.getChecksum() == null) {
+                    FixityManifest.calculate(transfer);
+                }
+                write(DONE, transfer.getDestination().getFileName().toString(), String.valueOf(transfer.getSize()), transfer.getChecksum(),
+                        transfer.getMd5());
+            } else {
+                pending.add(transfer);
+            }
+        }
+        writer.flush();
+        return pending;
+    }
+
+    /**
+     * Record a completed transfer. If no checksums were calculated during the transfer, they are calculated from the file in the master folder.
+     * 
+     * @param transfer the completed transfer
+     * @throws IOException if the checksum cannot be calculated or the journal cannot be written
+     */
+    @Override
+    public void transferred(ImageTransfer transfer) throws IOException {
+        if (transfer.getChecksum() == null) {
+            FixityManifest.calculate(transfer);
+        }
+        synchronized (this) {
+            write(DONE, transfer.getDestination().getFileName().toString(), String.valueOf(transfer.getSize()), transfer.getChecksum(),
+                    transfer.getMd5());
+            writer.flush();
+        }
+    }
+
+    /**
+     * Mark the import as finished and close the journal
+     * 
+     * @param summary summary of the import metrics, can be null
+     * @throws IOException if the journal cannot be written
+     */
+    public synchronized void finish(String summary) throws IOException {
+        if (summary != null) {
+            write(SUMMARY, summary);
+        }
+        write(FINISHED);
+        close();
+    }
+
+    /**
+     * Close the journal without marking it as finished, a new run continues where this one stopped
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.error(e);
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Check that the file of a completed transfer is still complete in the master folder. A file of an interrupted import can have the recorded
+     * size and still be torn, so its checksum is calculated again and compared with the journal.
+     */
+    private boolean isValid(ImageTransfer transfer, String[] done, boolean compareChecksum) {
+        try {
+            long recordedSize = Long.parseLong(done[2]);
+            if (recordedSize != transfer.getSize() || !StorageProvider.getInstance().isFileExists(transfer.getDestination())
+                    || StorageProvider.getInstance().getFileSize(transfer.getDestination()) != recordedSize) {
+                return false;
+            }
+            if (!compareChecksum) {
+                return true;
+            }
+            ImageTransfer check = new ImageTransfer(transfer.getSource(), transfer.getDestination());
+            FixityManifest.calculate(check);
+            return check.getChecksum().equalsIgnoreCase(done[3]);
+        } catch (NumberFormatException | IOException e) {
+            return false;
+        }
+    }
+
+    private void write(String... fields) throws IOException {
+        writer.write(String.join("\t", fields));
+        writer.newLine();
+    }
+}
@@ -0,0 +1,161 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * Timings and counters of a single import. The time of each phase is measured, for each transferred image the size and the latency are recorded.
+ * The latencies are collected in a histogram with buckets of doubling size, starting below one millisecond.
+ */
+public class ImportMetrics implements TransferListener {
+
+    public enum Phase {
+        READ_METADATA,
+        LISTING,
+        STRUCTURE,
+        TRANSFER,
+        FIXITY,
+        WRITE_METADATA
+    }
+
+    // upper bounds of the histogram buckets are 1, 2, 4, ... 65536 ms, the last bucket contains everything slower
+    public static final int HISTOGRAM_BUCKETS = 18;
+
+    @Getter
+    private final Integer processId;
+
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    public ImportMetrics(Integer processId) {
+        this.processId = processId;
+    }
+
+    /**
+     * Start measuring a phase, the time is recorded when the returned timer is closed
+     * 
+     * @param phase the phase to measure
+     * @return the running timer
+     */
+    public Timer time(Phase phase) {
+        return new Timer(phase, System.nanoTime());
+    }
+
+    @Override
+    public void transferred(ImageTransfer transfer) {
+        files.increment();
+        bytes.add(transfer.getSize());
+        long millis = TimeUnit.NANOSECONDS.toMillis(transfer.getDurationNanos());
+        int bucket = millis == 0 ? 0 : Math.min(HISTOGRAM_BUCKETS - 1, 64 - Long.numberOfLeadingZeros(millis));
+        latencyHistogram.incrementAndGet(bucket);
+    }
+
+    public long getPhaseMillis(Phase phase) {
+        synchronized (phaseNanos) {
+            return TimeUnit.NANOSECONDS.toMillis(phaseNanos.getOrDefault(phase, 0L));
+        }
+    }
+
+    public long getFiles() {
+        return files.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    /**
+     * Get the throughput of the transfer phase
+     * 
+     * @return transferred bytes per second, 0 if nothing was transferred
+     */
+    public long getBytesPerSecond() {
+        long millis = getPhaseMillis(Phase.TRANSFER);
+        return millis == 0 ? 0 : getBytes() * 1000 / millis;
+    }
+
+    /**
+     * Get the number of transfers per latency bucket, the upper bound of bucket i is 2^i milliseconds
+     * 
+     * @return the histogram
+     */
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    /**
+     * Get a one line summary for logs and journals
+     * 
+     * @return the summary
+     */
+    public String getSummary() {
+        StringBuilder sb = new StringBuilder("Folder import:");
+        for (Phase phase : Phase.values()) {
+            sb.append(' ').append(phase.name().toLowerCase()).append('=').append(getPhaseMillis(phase)).append("ms");
+        }
+        sb.append(", files=").append(getFiles());
+        sb.append(", bytes=").append(getBytes());
+        sb.append(", throughput=").append(getBytesPerSecond() / (1024 * 1024)).append("MB/s");
+        sb.append(", latency histogram (<1, <2, <4, ... ms)=");
+        long[] histogram = getLatencyHistogram();
+        int last = histogram.length - 1;
+        while (last > 0 && histogram[last] == 0) {
+            last--;
+        }
+        for (int i = 0; i <= last; i++) {
+            sb.append(i == 0 ? "[" : ",").append(histogram[i]);
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    public class Timer implements AutoCloseable {
+
+        private final Phase phase;
+        private final long start;
+
+        private Timer(Phase phase, long start) {
+            this.phase = phase;
+            this.start = start;
+        }
+
+        @Override
+        public void close() {
+            long duration = System.nanoTime() - start;
+            synchronized (phaseNanos) {
+                phaseNanos.merge(phase, duration, Long::sum);
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.GsonBuilder;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Result of the plan-only mode: what an import would do, without copying or changing anything. The plan is written as JSON, so it can be
+ * evaluated by scripts before a batch is started.
+ */
+@Getter
+public class ImportPlan {
+
+    public static final String FILENAME = "folderimport_plan.json";
+
+    private final Integer processId;
+
+    private final String processTitle;
+
+    // folder of the volume to import
+    @Setter
+    private String importFolder;
+
+    @Setter
+    private String transferStrategy;
+
+    // reasons why the import would fail
+    private final List<String> errors = new ArrayList<>();
+
+    // structure folders in page order
+    private final List<Folder> folders = new ArrayList<>();
+
+    // all pages in page order
+    private final List<Page> pages = new ArrayList<>();
+
+    // groups of images that would get the same name in the master folder
+    private final List<List<String>> collisions = new ArrayList<>();
+
+    // number and size of the images to transfer
+    private int files;
+    private long bytes;
+
+    // average throughput of the earlier imports and the resulting duration, null if nothing was measured yet
+    private Long throughputBytesPerSecond;
+    private Long estimatedSeconds;
+
+    public ImportPlan(Integer processId, String processTitle) {
+        this.processId = processId;
+        this.processTitle = processTitle;
+    }
+
+    /**
+     * Add a structure folder and its images
+     * 
+     * @param folder the folder
+     * @param transfers the planned transfers of its images, the sizes must be set
+     */
+    public void addFolder(PlannedFolder folder, List<ImageTransfer> transfers) {
+        long folderBytes = 0;
+        for (ImageTransfer transfer : transfers) {
+            pages.add(new Page(pages.size() + 1, transfer));
+            folderBytes += transfer.getSize();
+        }
+        folders.add(new Folder(folder, transfers.size(), folderBytes));
+        files += transfers.size();
+        bytes += folderBytes;
+    }
+
+    /**
+     * Estimate the duration of the transfers
+     * 
+     * @param bytesPerSecond measured throughput, 0 if unknown
+     */
+    public void estimate(long bytesPerSecond) {
+        if (bytesPerSecond > 0) {
+            throughputBytesPerSecond = bytesPerSecond;
+            estimatedSeconds = (bytes + bytesPerSecond - 1) / bytesPerSecond;
+        }
+    }
+
+    public String toJson() {
+        return new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(this);
+    }
+
+    private static class Folder {
+
+        private final String name;
+        private final String docType;
+        private final int pages;
+        private final long bytes;
+
+        private Folder(PlannedFolder folder, int pages, long bytes) {
+            name = folder.getName();
+            docType = folder.getDocType();
+            this.pages = pages;
+            this.bytes = bytes;
+        }
+    }
+
+    private static class Page {
+
+        private final int order;
+        private final String source;
+        private final String target;
+        private final long size;
+
+        private Page(int order, ImageTransfer transfer) {
+            this.order = order;
+            source = transfer.getSource().toString();
+            target = transfer.getDestination().getFileName().toString();
+            size = transfer.getSize();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.goobi.production.cli.helper.StringPair;
+
+/**
+ * Decides which structure elements and pages an import creates, without changing anything: the order of the structure folders, their doc types
+ * and the new names of their images in the master folder. Used by the import itself and by the plan-only mode.
+ */
+public class ImportPlanner {
+
+    private final FolderimportConfiguration configuration;
+
+    private final Path masterFolder;
+
+    public ImportPlanner(FolderimportConfiguration configuration, String masterFolder) {
+        this.configuration = configuration;
+        this.masterFolder = Paths.get(masterFolder);
+    }
+
+    /**
+     * Get the structure folders in the order of the pages: first the configured prefix folders, then all other folders sorted by name, last the
+     * configured suffix folders
+     * 
+     * @param snapshot the content of the volume folder
+     * @return the folders with the doc types to create
+     */
+    public List<PlannedFolder> orderFolders(VolumeSnapshot snapshot) {
+        List<String> allFolderInDirectory = snapshot.getFolderNames();
+
+        List<PlannedFolder> prefixFolder = new ArrayList<>();
+        List<PlannedFolder> suffixFolder = new ArrayList<>();
+        List<String> classified = new ArrayList<>();
+
+        // get correct prefix items from configuration file
+        for (StringPair sp : configuration.getPrefixList()) {
+            for (String currentFolder : allFolderInDirectory) {
+                if (currentFolder.equalsIgnoreCase(sp.getOne())) {
+                    prefixFolder.add(new PlannedFolder(currentFolder, sp.getTwo(), false));
+                    classified.add(currentFolder);
+                }
+            }
+        }
+
+        // get correct suffix items from configuration file (like Buchrücken, Frabkeil, ...)
+        for (StringPair sp : configuration.getSuffixList()) {
+            for (String currentFolder : allFolderInDirectory) {
+                if (currentFolder.equalsIgnoreCase(sp.getOne())) {
+                    suffixFolder.add(new PlannedFolder(currentFolder, sp.getTwo(), false));
+                    classified.add(currentFolder);
+                }
+            }
+        }
+
+        // order other folder
+        List<String> otherFolder = new ArrayList<>();
+        for (String currentFolder : allFolderInDirectory) {
+            if (!classified.contains(currentFolder)) {
+                otherFolder.add(currentFolder);
+            }
+        }
+        Collections.sort(otherFolder);
+
+        List<PlannedFolder> folders = new ArrayList<>(prefixFolder);
+        for (String currentFolder : otherFolder) {
+            folders.add(new PlannedFolder(currentFolder, configuration.getMainType(), true));
+        }
+        folders.addAll(suffixFolder);
+        return folders;
+    }
+
+    /**
+     * Get the images of a structure folder that are imported, together with their new names in the master folder
+     * 
+     * @param snapshot the content of the volume folder
+     * @param folderName name of the structure folder
+     * @return the transfers of the images, in page order
+     */
+    public List<ImageTransfer> planImages(VolumeSnapshot snapshot, String folderName) {
+        List<Path> images = snapshot.getImages(folderName);
+        List<ImageTransfer> transfers = new ArrayList<>(images.size());
+        Path structureFolder = snapshot.getVolumeFolder().resolve(folderName);
+        for (int i = 0; i < images.size(); i++) {
+            Path image = images.get(i);
+            // skip files like Thumbs.db or sidecar files
+            if (!configuration.getImageNameRules().accept(image.getFileName().toString())) {
+                continue;
+            }
+            // images of deeper sub folders contain the relative path in the name
+            String newImageName = configuration.getImageNameRules().sanitise(folderName + "_" + structureFolder.relativize(image).toString());
+            ImageTransfer transfer = new ImageTransfer(image, masterFolder.resolve(newImageName));
+            transfer.setSize(snapshot.getSize(folderName, i));
+            transfers.add(transfer);
+        }
+        return transfers;
+    }
+
+    /**
+     * Find images that get the same name in the master folder. Names that differ only in upper and lower case collide as well.
+     * 
+     * @param transfers all planned transfers of the import
+     * @return groups of transfers with the same name, empty if all names are unique
+     */
+    public static List<List<ImageTransfer>> findCollisions(List<ImageTransfer> transfers) {
+        Map<String, List<ImageTransfer>> plannedNames = new LinkedHashMap<>();
+        for (ImageTransfer transfer : transfers) {
+            String name = transfer.getDestination().getFileName().toString().toLowerCase(Locale.ROOT);
+            plannedNames.computeIfAbsent(name, k -> new ArrayList<>(1)).add(transfer);
+        }
+        List<List<ImageTransfer>> collisions = new ArrayList<>();
+        for (List<ImageTransfer> group : plannedNames.values()) {
+            if (group.size() > 1) {
+                collisions.add(group);
+            }
+        }
+        return collisions;
+    }
+}
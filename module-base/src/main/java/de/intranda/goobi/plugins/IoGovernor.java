@@ -0,0 +1,267 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Limits the I/O of all folder imports running in this JVM, so parallel imports do not saturate the shared storage. There is one governor shared
+ * by all imports. If the imports are configured with different limits, the most restrictive value of each limit applies to all of them as long as
+ * the JVM runs, the adapted file limit is kept as well.
+ * 
+ * The copied bytes pass a token bucket with the configured bytes per second, up to one second of unused capacity can be used as burst. The number
+ * of files transferred at the same time is limited as well. This limit adapts to the observed latency: if copying a megabyte takes longer than
+ * the target latency, the limit is halved, otherwise it grows by one until the configured maximum is reached again.
+ */
+@Log4j2
+public class IoGovernor {
+
+    private static final IoGovernor INSTANCE = new IoGovernor(0, 0, 0);
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    // weight of the newest latency in the moving average
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition fileReleased = lock.newCondition();
+
+    // token bucket, 0 means unlimited
+    private long bytesPerSecond;
+    private long nextFreeNanos = System.nanoTime();
+
+    // concurrent files, 0 means unlimited
+    private int maxFiles;
+    private long targetMillisPerMegabyte;
+    private int fileLimit;
+    private int activeFiles;
+
+    // moving average of the copy time per megabyte and the number of files since the limit was adapted
+    private double averageMillisPerMegabyte;
+    private int filesSinceAdaption;
+
+    IoGovernor(long bytesPerSecond, int maxFiles, long targetMillisPerMegabyte) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.maxFiles = maxFiles;
+        this.targetMillisPerMegabyte = targetMillisPerMegabyte;
+        fileLimit = maxFiles == 0 ? Integer.MAX_VALUE : maxFiles;
+    }
+
+    /**
+     * Get the governor shared by all imports
+     * 
+     * @return the governor
+     */
+    public static IoGovernor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the governor shared by all imports and add the limits of an import to it. Each limit becomes the smallest value configured by any import.
+     * 
+     * @param bytesPerSecond maximum bytes copied per second, 0 for no limit
+     * @param maxFiles maximum number of files transferred at the same time, 0 for no limit
+     * @param targetMillisPerMegabyte the file limit is reduced if copying a megabyte takes longer, 0 to keep the limit fixed
+     * @return the governor
+     */
+    public static IoGovernor getInstance(long bytesPerSecond, int maxFiles, long targetMillisPerMegabyte) {
+        INSTANCE.restrict(bytesPerSecond, maxFiles, targetMillisPerMegabyte);
+        return INSTANCE;
+    }
+
+    /**
+     * Apply the more restrictive of the current and the given limits
+     */
+    private void restrict(long bytes, int files, long target) {
+        lock.lock();
+        try {
+            long newBytes = min(bytesPerSecond, bytes);
+            int newFiles = (int) min(maxFiles, files);
+            long newTarget = min(targetMillisPerMegabyte, target);
+            if (newBytes == bytesPerSecond && newFiles == maxFiles && newTarget == targetMillisPerMegabyte) {
+                return;
+            }
+            bytesPerSecond = newBytes;
+            targetMillisPerMegabyte = newTarget;
+            if (newFiles != maxFiles) {
+                maxFiles = newFiles;
+                fileLimit = Math.min(fileLimit, newFiles);
+            }
+            log.info("Folder import I/O limits of all imports: {} bytes per second, {} files, target latency {} ms per MB", bytesPerSecond, maxFiles,
+                    targetMillisPerMegabyte);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the smaller of two limits, 0 means unlimited
+     */
+    private static long min(long current, long limit) {
+        if (limit <= 0) {
+            return current;
+        }
+        return current == 0 ? limit : Math.min(current, limit);
+    }
+
+    /**
+     * Wait until another file may be transferred
+     * 
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public void acquireFile() throws InterruptedException {
+        lock.lock();
+        try {
+            while (activeFiles >= fileLimit) {
+                fileReleased.await();
+            }
+            activeFiles++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Finish the transfer of a file and adapt the file limit to its latency
+     * 
+     * @param size size of the file in bytes
+     * @param durationNanos duration of the transfer, negative if the transfer failed
+     */
+    public void releaseFile(long size, long durationNanos) {
+        lock.lock();
+        try {
+            activeFiles--;
+            if (durationNanos >= 0 && targetMillisPerMegabyte > 0 && maxFiles > 0) {
+                adapt(size, durationNanos);
+            }
+            fileReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxFiles() {
+        lock.lock();
+        try {
+            return maxFiles;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getFileLimit() {
+        lock.lock();
+        try {
+            return fileLimit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wrap the input stream of a copy, so its bytes pass the token bucket
+     * 
+     * @param in the stream to read
+     * @return the throttled stream
+     */
+    public InputStream throttle(InputStream in) {
+        return new FilterInputStream(in) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    acquireBytes(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    acquireBytes(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Take the bytes from the token bucket, wait if they are not available yet
+     * 
+     * @param bytes number of bytes
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public void acquireBytes(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        lock.lock();
+        try {
+            if (bytesPerSecond == 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            // unused capacity of at most one second can be used as burst
+            nextFreeNanos = Math.max(nextFreeNanos, now - TimeUnit.SECONDS.toNanos(1));
+            waitNanos = nextFreeNanos - now;
+            nextFreeNanos += bytes * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond;
+        } finally {
+            lock.unlock();
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the I/O limit");
+            }
+        }
+    }
+
+    private void adapt(long size, long durationNanos) {
+        // small files count as one megabyte, their latency is dominated by opening and closing
+        double megabytes = Math.max(1.0, (double) size / MEGABYTE);
+        double millisPerMegabyte = durationNanos / 1_000_000.0 / megabytes;
+        averageMillisPerMegabyte = averageMillisPerMegabyte == 0 ? millisPerMegabyte
+                : LATENCY_WEIGHT * millisPerMegabyte + (1 - LATENCY_WEIGHT) * averageMillisPerMegabyte;
+        // adapt once per round of files at the current limit
+        if (++filesSinceAdaption < Math.min(fileLimit, maxFiles)) {
+            return;
+        }
+        filesSinceAdaption = 0;
+        int previousLimit = fileLimit;
+        if (averageMillisPerMegabyte > targetMillisPerMegabyte) {
+            fileLimit = Math.max(1, fileLimit / 2);
+        } else if (fileLimit < maxFiles) {
+            fileLimit++;
+        }
+        if (fileLimit != previousLimit) {
+            log.debug("Folder import file limit changed from {} to {}, {} ms per MB", previousLimit, fileLimit, Math.round(averageMillisPerMegabyte));
+        }
+    }
+}
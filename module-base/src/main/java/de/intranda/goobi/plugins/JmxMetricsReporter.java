@@ -0,0 +1,137 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Sums up the metrics of all imports in the JVM and publishes them via JMX. The values are also used to estimate the duration of planned imports.
+ */
+@Log4j2
+public class JmxMetricsReporter implements ImportMetricsReporter, FolderimportMetricsMXBean {
+
+    private static final JmxMetricsReporter INSTANCE = new JmxMetricsReporter();
+
+    private final LongAdder imports = new LongAdder();
+    private final LongAdder failedImports = new LongAdder();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder transferMillis = new LongAdder();
+    private final Map<ImportMetrics.Phase, LongAdder> phaseMillis = new LinkedHashMap<>();
+    private final AtomicLongArray latencyHistogram = new AtomicLongArray(ImportMetrics.HISTOGRAM_BUCKETS);
+    private volatile String lastSummary = "";
+
+    private JmxMetricsReporter() {
+        for (ImportMetrics.Phase phase : ImportMetrics.Phase.values()) {
+            phaseMillis.put(phase, new LongAdder());
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("de.intranda.goobi.plugins:type=FolderimportMetrics");
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException | SecurityException e) {
+            log.warn("Folder import metrics are not available via JMX: {}", e.getMessage());
+        }
+    }
+
+    public static JmxMetricsReporter getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void report(ImportMetrics metrics, boolean successful) {
+        imports.increment();
+        if (!successful) {
+            failedImports.increment();
+        }
+        files.add(metrics.getFiles());
+        bytes.add(metrics.getBytes());
+        transferMillis.add(metrics.getPhaseMillis(ImportMetrics.Phase.TRANSFER));
+        for (ImportMetrics.Phase phase : ImportMetrics.Phase.values()) {
+            phaseMillis.get(phase).add(metrics.getPhaseMillis(phase));
+        }
+        long[] histogram = metrics.getLatencyHistogram();
+        for (int i = 0; i < histogram.length; i++) {
+            latencyHistogram.addAndGet(i, histogram[i]);
+        }
+        lastSummary = metrics.getSummary();
+    }
+
+    @Override
+    public long getImports() {
+        return imports.sum();
+    }
+
+    @Override
+    public long getFailedImports() {
+        return failedImports.sum();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getBytesPerSecond() {
+        long millis = transferMillis.sum();
+        return millis == 0 ? 0 : getBytes() * 1000 / millis;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<ImportMetrics.Phase, LongAdder> entry : phaseMillis.entrySet()) {
+            result.put(entry.getKey().name(), entry.getValue().sum());
+        }
+        return result;
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] histogram = new long[latencyHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = latencyHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    @Override
+    public String getLastSummary() {
+        return lastSummary;
+    }
+}
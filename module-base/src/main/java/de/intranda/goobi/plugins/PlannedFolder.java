@@ -0,0 +1,44 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import lombok.Getter;
+
+/**
+ * A structure folder of the volume and the doc type created for it.
+ */
+@Getter
+public class PlannedFolder {
+
+    // name of the folder within the volume folder
+    private final String name;
+
+    // doc type of the structure element
+    private final String docType;
+
+    // folder of the main type, its structure element gets the configured metadata
+    private final boolean main;
+
+    public PlannedFolder(String name, String docType, boolean main) {
+        this.name = name;
+        this.docType = docType;
+        this.main = main;
+    }
+}
@@ -0,0 +1,216 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Checks the whole import before anything is copied: empty structure folders, unreadable and empty images, names that collide in the master
+ * folder, a master folder that is not writable and missing free space. The images are checked in parallel. All problems are collected, so one
+ * report lists everything that needs to be fixed.
+ */
+@Log4j2
+public class PreflightCheck {
+
+    public static final String FILENAME = "folderimport_preflight.txt";
+
+    private final FolderimportConfiguration configuration;
+
+    private final int threads;
+
+    public PreflightCheck(FolderimportConfiguration configuration) {
+        this.configuration = configuration;
+        threads = Math.max(1, configuration.getScanThreads());
+    }
+
+    /**
+     * Check the planned import
+     * 
+     * @param snapshot the content of the volume folder
+     * @param transfers the planned transfers of all images
+     * @param unchanged transfers that are not copied again, can be empty
+     * @param masterFolder the master folder of the process
+     * @return the problems, empty if the import can be started
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the checks
+     */
+    public List<String> check(VolumeSnapshot snapshot, List<ImageTransfer> transfers, Set<ImageTransfer> unchanged, Path masterFolder)
+            throws InterruptedException {
+        List<String> problems = new ArrayList<>();
+        checkFolders(snapshot, transfers, problems);
+        for (List<ImageTransfer> collision : ImportPlanner.findCollisions(transfers)) {
+            List<Path> sources = new ArrayList<>(collision.size());
+            for (ImageTransfer transfer : collision) {
+                sources.add(transfer.getSource());
+            }
+            problems.add("Images " + sources + " get the same name " + collision.get(0).getDestination().getFileName() + ".");
+        }
+        long requiredBytes = checkImages(transfers, unchanged, problems);
+        checkMasterFolder(snapshot.getVolumeFolder(), masterFolder, requiredBytes, problems);
+        return problems;
+    }
+
+    /**
+     * Write the problems into the report file of the process
+     * 
+     * @param processFolder the process folder
+     * @param problems the problems found
+     * @return the report file
+     * @throws IOException if the report cannot be written
+     */
+    public static Path writeReport(Path processFolder, List<String> problems) throws IOException {
+        Path report = processFolder.resolve(FILENAME);
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(StorageProvider.getInstance().newOutputStream(report),
+                StandardCharsets.UTF_8))) {
+            for (String problem : problems) {
+                writer.write(problem);
+                writer.newLine();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Each structure folder must contain at least one image, otherwise the structure element would have no pages
+     */
+    private void checkFolders(VolumeSnapshot snapshot, List<ImageTransfer> transfers, List<String> problems) {
+        Map<String, Integer> imagesPerFolder = new HashMap<>();
+        for (ImageTransfer transfer : transfers) {
+            Path relative = snapshot.getVolumeFolder().relativize(transfer.getSource());
+            imagesPerFolder.merge(relative.getName(0).toString(), 1, Integer::sum);
+        }
+        for (String folderName : snapshot.getFolderNames()) {
+            if (!imagesPerFolder.containsKey(folderName)) {
+                problems.add("Folder " + snapshot.getVolumeFolder().resolve(folderName) + " contains no images.");
+            }
+        }
+    }
+
+    /**
+     * Check that all images are readable and not empty, the slices of the list are checked in parallel
+     * 
+     * @return the number of bytes to copy
+     */
+    private long checkImages(List<ImageTransfer> transfers, Set<ImageTransfer> unchanged, List<String> problems) throws InterruptedException {
+        if (transfers.isEmpty()) {
+            return 0;
+        }
+        int sliceSize = (transfers.size() + threads - 1) / threads;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, transfers.size()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            List<List<String>> sliceProblems = new ArrayList<>();
+            for (int start = 0; start < transfers.size(); start += sliceSize) {
+                List<ImageTransfer> slice = transfers.subList(start, Math.min(transfers.size(), start + sliceSize));
+                List<String> found = new ArrayList<>();
+                sliceProblems.add(found);
+                futures.add(executor.submit(() -> checkSlice(slice, unchanged, found)));
+            }
+            long requiredBytes = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    requiredBytes += futures.get(i).get();
+                } catch (ExecutionException e) {
+                    log.error(e.getCause());
+                    problems.add("Images could not be checked: " + e.getCause().getMessage());
+                }
+                // keep the page order in the report
+                problems.addAll(sliceProblems.get(i));
+            }
+            return requiredBytes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long checkSlice(List<ImageTransfer> slice, Set<ImageTransfer> unchanged, List<String> problems) {
+        StorageProvider storage = StorageProvider.getInstance();
+        long requiredBytes = 0;
+        for (ImageTransfer transfer : slice) {
+            if (!storage.isReadable(transfer.getSource())) {
+                problems.add("Image " + transfer.getSource() + " is not readable.");
+                continue;
+            }
+            try {
+                if (transfer.getSize() < 0) {
+                    transfer.setSize(storage.getFileSize(transfer.getSource()));
+                }
+            } catch (IOException e) {
+                problems.add("Image " + transfer.getSource() + " is not readable: " + e.getMessage());
+                continue;
+            }
+            if (transfer.getSize() == 0) {
+                problems.add("Image " + transfer.getSource() + " is empty.");
+            } else if (!unchanged.contains(transfer)) {
+                requiredBytes += transfer.getSize();
+            }
+        }
+        return requiredBytes;
+    }
+
+    /**
+     * The master folder must be writable and have enough free space. Hard links and moves within the same file system need no space. If the
+     * master folder does not exist yet, the nearest existing parent folder is checked, nothing is created.
+     */
+    private void checkMasterFolder(Path volumeFolder, Path masterFolder, long requiredBytes, List<String> problems) {
+        Path existing = masterFolder;
+        while (existing != null && !StorageProvider.getInstance().isFileExists(existing)) {
+            existing = existing.getParent();
+        }
+        if (existing == null || !StorageProvider.getInstance().isWritable(existing)) {
+            problems.add("Master folder " + masterFolder + " is not writable.");
+            return;
+        }
+        if (ConfigurationHelper.getInstance().useS3() || requiredBytes == 0) {
+            return;
+        }
+        try {
+            TransferStrategy strategy = configuration.getTransferStrategy();
+            if ((strategy == TransferStrategy.HARDLINK || strategy == TransferStrategy.MOVE)
+                    && Files.getFileStore(volumeFolder).equals(Files.getFileStore(existing))) {
+                return;
+            }
+            long usableBytes = Files.getFileStore(existing).getUsableSpace();
+            if (usableBytes < requiredBytes) {
+                problems.add("Not enough free space in " + masterFolder + ": " + requiredBytes + " bytes are needed, " + usableBytes
+                        + " bytes are available.");
+            }
+        } catch (IOException e) {
+            log.warn("Free space of {} could not be checked: {}", masterFolder, e.getMessage());
+        }
+    }
+}
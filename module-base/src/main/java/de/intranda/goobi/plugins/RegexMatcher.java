@@ -0,0 +1,81 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ugh.dl.DocStruct;
+import ugh.dl.MetadataType;
+
+/**
+ * Matches the folders by the groups of a regular expression. The pattern is applied to each folder name, its groups form the key of the folder.
+ * The key of the process is the metadata value, or the groups of the value pattern applied to it. Folders not matching the pattern are ignored.
+ */
+public class RegexMatcher implements FolderMatcher {
+
+    private final MetadataType metadataType;
+
+    private final Pattern folderPattern;
+
+    // pattern applied to the metadata value, null to use the whole value
+    private final Pattern valuePattern;
+
+    public RegexMatcher(MetadataType metadataType, Pattern folderPattern, Pattern valuePattern) {
+        this.metadataType = metadataType;
+        this.folderPattern = folderPattern;
+        this.valuePattern = valuePattern;
+    }
+
+    @Override
+    public String getKey(DocStruct logical) {
+        String value = FolderMatcher.getValue(logical, metadataType);
+        if (value == null || valuePattern == null) {
+            return FolderMatcher.normalise(value);
+        }
+        return getGroups(valuePattern, value);
+    }
+
+    @Override
+    public List<Path> find(RootFolderIndex index, String key) {
+        return index.findByKey("regex:" + folderPattern.pattern(), folderName -> getGroups(folderPattern, folderName), key);
+    }
+
+    /**
+     * Get the normalised groups of the first match, joined by a tab. A pattern without groups returns the whole match.
+     */
+    private static String getGroups(Pattern pattern, String value) {
+        Matcher matcher = pattern.matcher(value);
+        if (!matcher.find()) {
+            return null;
+        }
+        if (matcher.groupCount() == 0) {
+            return FolderMatcher.normalise(matcher.group());
+        }
+        StringJoiner groups = new StringJoiner("\t");
+        for (int i = 1; i <= matcher.groupCount(); i++) {
+            groups.add(FolderMatcher.normalise(matcher.group(i) == null ? "" : matcher.group(i)));
+        }
+        return groups.toString();
+    }
+}
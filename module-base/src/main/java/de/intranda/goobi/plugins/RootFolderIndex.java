@@ -0,0 +1,166 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Sorted index of the folder names within a root folder. The index is shared by all plugin instances within the JVM and is read again when the
+ * modification date of the root folder changes, so a batch of processes lists the root folder only once. Some file systems don't update the
+ * modification date reliably, e.g. network shares or a folder created within the same second, so the root folder is listed once more before a
+ * folder is reported as missing.
+ */
+@Log4j2
+public class RootFolderIndex {
+
+    private static final Map<String, RootFolderIndex> INDICES = new ConcurrentHashMap<>();
+
+    private final Path rootFolder;
+
+    // folder name -> folder
+    private volatile NavigableMap<String, Path> entries = Collections.emptyNavigableMap();
+
+    // name of the key function -> key -> folders, computed from the current entries and dropped when they are read again
+    private volatile Map<String, Map<String, List<Path>>> keyIndices = new ConcurrentHashMap<>();
+
+    // modification date of the root folder when the index was created, -1 if it was never read
+    private volatile long lastModified = -1;
+
+    // number of times the root folder was listed
+    private volatile int generation;
+
+    private RootFolderIndex(Path rootFolder) {
+        this.rootFolder = rootFolder;
+    }
+
+    /**
+     * Get the shared index for a root folder
+     * 
+     * @param rootFolder the root folder
+     * @return the index
+     */
+    public static RootFolderIndex getInstance(String rootFolder) {
+        return INDICES.computeIfAbsent(rootFolder, k -> new RootFolderIndex(Paths.get(k)));
+    }
+
+    /**
+     * Find all entries in the root folder whose name starts with the given prefix
+     * 
+     * @param prefix the beginning of the folder name
+     * @return all matching entries, sorted by name
+     */
+    public List<Path> findByPrefix(String prefix) {
+        int listed = generation;
+        NavigableMap<String, Path> current = getEntries(false);
+        if (!hasPrefix(current, prefix) && listed == generation) {
+            current = getEntries(true);
+        }
+        return new ArrayList<>(current.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values());
+    }
+
+    /**
+     * Find all entries in the root folder with the given key. The keys of all entries are computed once by the key function and kept in a hash
+     * index until the root folder changes, so each lookup takes constant time.
+     * 
+     * @param indexName unique name of the key function, the index is shared by all callers using this name
+     * @param keyFunction computes the key of a folder name, null if the folder has no key
+     * @param key the key to find
+     * @return all matching entries, sorted by name
+     */
+    public List<Path> findByKey(String indexName, Function<String, String> keyFunction, String key) {
+        int listed = generation;
+        List<Path> found = getKeyIndex(indexName, keyFunction, false).get(key);
+        if (found == null && listed == generation) {
+            found = getKeyIndex(indexName, keyFunction, true).get(key);
+        }
+        return found == null ? Collections.emptyList() : new ArrayList<>(found);
+    }
+
+    private Map<String, List<Path>> getKeyIndex(String indexName, Function<String, String> keyFunction, boolean reload) {
+        // read before the entries, an index computed during a reload only ends up in the discarded map
+        Map<String, Map<String, List<Path>>> indices = keyIndices;
+        NavigableMap<String, Path> current = getEntries(reload);
+        if (reload) {
+            // the entries were just listed by this thread, the new map belongs to them
+            indices = keyIndices;
+        }
+        return indices.computeIfAbsent(indexName, k -> {
+            Map<String, List<Path>> keys = new HashMap<>();
+            for (Map.Entry<String, Path> entry : current.entrySet()) {
+                String folderKey = keyFunction.apply(entry.getKey());
+                if (folderKey != null) {
+                    keys.computeIfAbsent(folderKey, f -> new ArrayList<>(1)).add(entry.getValue());
+                }
+            }
+            return keys;
+        });
+    }
+
+    private static boolean hasPrefix(NavigableMap<String, Path> entries, String prefix) {
+        String next = entries.ceilingKey(prefix);
+        return next != null && next.startsWith(prefix);
+    }
+
+    /**
+     * Get the entries, the root folder is listed again if its modification date changed or a reload is requested
+     */
+    private NavigableMap<String, Path> getEntries(boolean reload) {
+        long modified = readLastModified();
+        if (reload || modified == -1 || modified != lastModified) {
+            synchronized (this) {
+                if (reload || modified == -1 || modified != lastModified) {
+                    NavigableMap<String, Path> index = new TreeMap<>();
+                    for (Path path : StorageProvider.getInstance().listFiles(rootFolder.toString())) {
+                        index.put(path.getFileName().toString(), path);
+                    }
+                    entries = Collections.unmodifiableNavigableMap(index);
+                    keyIndices = new ConcurrentHashMap<>();
+                    lastModified = modified;
+                    generation++;
+                    log.debug("Indexed {} entries of {}", index.size(), rootFolder);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private long readLastModified() {
+        try {
+            return StorageProvider.getInstance().getLastModifiedDate(rootFolder);
+        } catch (IOException e) {
+            // root folder does not exist (yet), don't cache anything
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.commons.lang.SystemUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Md;
+import ugh.dl.Metadata;
+import ugh.dl.Reference;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.TypeNotAllowedAsChildException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+import ugh.exceptions.UGHException;
+
+/**
+ * Creates the logical structure elements and the pages of an import within the digital document. The images are not copied, instead the planned
+ * transfers are returned in page order.
+ */
+@Log4j2
+public class StructureBuilder {
+
+    private final FolderimportConfiguration configuration;
+
+    private final DigitalDocument dd;
+    private final DocStruct logical;
+    private final DocStruct physical;
+
+    private final ImportPlanner planner;
+
+    // the master folder of the process, only pages with their image in it were created by the import
+    private final Path masterFolder;
+
+    private static final String MIX_NAMESPACE = "http://www.loc.gov/mix/v20";
+
+    // prefix of the content file locations, shared by all pages
+    private final String locationPrefix;
+
+    // structure elements and pages that could not be created, the import must not be saved if there are any
+    private final List<String> errors = new ArrayList<>();
+
+    public StructureBuilder(FolderimportConfiguration configuration, DigitalDocument dd, DocStruct logical, DocStruct physical, String masterFolder) {
+        this.configuration = configuration;
+        this.dd = dd;
+        this.logical = logical;
+        this.physical = physical;
+        planner = new ImportPlanner(configuration, masterFolder);
+        this.masterFolder = Paths.get(masterFolder).toAbsolutePath().normalize();
+        locationPrefix = SystemUtils.IS_OS_WINDOWS ? "file:/" : "file://";
+    }
+
+    /**
+     * Create a structure element for each folder of the volume: first the configured prefix folders, then all other folders sorted by name, last
+     * the configured suffix folders. Each image becomes a page, numbered in this order.
+     * 
+     * @param snapshot the content of the volume folder
+     * @return the planned transfers of all images, in page order
+     */
+    public List<ImageTransfer> build(VolumeSnapshot snapshot) {
+        int imageIndex = 1;
+
+        // create all structure elements, collect the images to copy
+        List<ImageTransfer> transfers = new ArrayList<>(snapshot.getImageCount());
+        // structure elements of the main type with pages -> folder name
+        Map<DocStruct, String> metadataFolders = new IdentityHashMap<>();
+
+        // create cover, title page, main elements and end elements
+        for (PlannedFolder folder : planner.orderFolders(snapshot)) {
+            try {
+                imageIndex = createDocstruct(folder, planner.planImages(snapshot, folder.getName()), imageIndex,
+                        folder.isMain() ? metadataFolders : null, transfers);
+            } catch (UGHException e) {
+                log.error(e);
+                errors.add("Structure of folder " + folder.getName() + " could not be created: " + e.getMessage());
+            }
+        }
+
+        // create the metadata of the main elements, once for each folder
+        for (Map.Entry<DocStruct, String> entry : metadataFolders.entrySet()) {
+            configuration.getStructureMetadata().apply(entry.getKey(), entry.getValue());
+        }
+        return transfers;
+    }
+
+    /**
+     * Update the structure of a previous import to the current content of the volume. Pages are matched to the images by the file name of their
+     * content file. Pages of new images are added, pages of removed images are deleted with their references, unchanged pages and structure
+     * elements are kept as they are. A structure element is only created for a new folder. Afterwards the pages are sorted into the planned order
+     * and the physical page numbers are assigned again.
+     * 
+     * @param snapshot the content of the volume folder
+     * @param compareChecksums the checksums of source and master file are compared by {@link #compareChecksums(StructureDelta)}, otherwise an
+     *            image is changed if its size differs or the source is newer than the master file
+     * @return the transfers of all images in page order and the changes
+     * @throws IOException if a file cannot be compared
+     */
+    public StructureDelta update(VolumeSnapshot snapshot, boolean compareChecksums) throws IOException {
+        StructureDelta delta = new StructureDelta();
+        List<PlannedFolder> folders = planner.orderFolders(snapshot);
+
+        // plan the images of all folders, file name -> folder name
+        Map<String, List<ImageTransfer>> images = new HashMap<>();
+        Map<String, String> folderOfImage = new HashMap<>();
+        for (PlannedFolder folder : folders) {
+            List<ImageTransfer> folderImages = planner.planImages(snapshot, folder.getName());
+            images.put(folder.getName(), folderImages);
+            for (ImageTransfer image : folderImages) {
+                folderOfImage.put(image.getDestination().getFileName().toString(), folder.getName());
+            }
+        }
+
+        // existing pages with their image in the master folder by file name, other pages are kept as they are
+        Map<String, DocStruct> pages = new HashMap<>();
+        if (physical.getAllChildren() != null) {
+            for (DocStruct page : physical.getAllChildren()) {
+                Path file = getMasterFile(page);
+                if (file != null) {
+                    pages.put(file.getFileName().toString(), page);
+                }
+            }
+        }
+
+        // existing structure elements by folder, identified by the images of their pages. Elements without a page in the volume are removed.
+        Map<String, DocStruct> elements = new HashMap<>();
+        List<String> importedTypes = configuration.getImportedTypes();
+        if (logical.getAllChildren() != null) {
+            for (DocStruct child : new ArrayList<>(logical.getAllChildren())) {
+                if (importedTypes.contains(child.getType().getName())) {
+                    String folderName = findFolder(child, folderOfImage);
+                    if (folderName == null || elements.containsKey(folderName)) {
+                        removeReferences(child);
+                        logical.removeChild(child);
+                    } else {
+                        elements.put(folderName, child);
+                    }
+                }
+            }
+        }
+
+        List<DocStruct> orderedElements = new ArrayList<>();
+        List<DocStruct> orderedPages = new ArrayList<>();
+        for (PlannedFolder folder : folders) {
+            try {
+                DocStruct ds = elements.get(folder.getName());
+                boolean created = ds == null;
+                if (created) {
+                    ds = createElement(folder);
+                }
+                orderedElements.add(ds);
+                List<ImageTransfer> folderImages = images.get(folder.getName());
+                for (ImageTransfer image : folderImages) {
+                    DocStruct page = pages.remove(image.getDestination().getFileName().toString());
+                    if (page == null) {
+                        page = createPage(ds, image, 0);
+                        delta.added(image);
+                    } else if (isChanged(image, compareChecksums)) {
+                        delta.changed(image);
+                    } else if (compareChecksums) {
+                        delta.unverified(image);
+                    } else {
+                        delta.unchanged(image);
+                    }
+                    orderedPages.add(page);
+                }
+                if (created && folder.isMain() && !folderImages.isEmpty()) {
+                    configuration.getStructureMetadata().apply(ds, folder.getName());
+                }
+            } catch (UGHException e) {
+                log.error(e);
+                errors.add("Structure of folder " + folder.getName() + " could not be updated: " + e.getMessage());
+            }
+        }
+
+        // remove the pages of images that no longer exist
+        Set<DocStruct> removedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DocStruct page : pages.values()) {
+            delta.removed(getMasterFile(page));
+            removePage(page);
+            removedPages.add(page);
+        }
+
+        // sort the imported elements and the pages into the planned order, the objects and their references are kept
+        sortChildren(logical, orderedElements, Collections.emptySet());
+        sortChildren(physical, orderedPages, removedPages);
+        int imageIndex = 1;
+        for (DocStruct page : orderedPages) {
+            for (Metadata md : page.getAllMetadataByType(configuration.getPhysType())) {
+                md.setValue(String.valueOf(imageIndex));
+            }
+            imageIndex = imageIndex + 1;
+        }
+        return delta;
+    }
+
+    /**
+     * Compare the checksums of the source and master files of the images the update found unchanged by their size. This reads all these files,
+     * so it is done after the preflight check. Images with different checksums are changed and copied again, the checksums of the master files
+     * are kept in the transfers of the others.
+     * 
+     * @param delta the result of {@link #update(VolumeSnapshot, boolean)}
+     * @throws IOException if a file cannot be read
+     */
+    public void compareChecksums(StructureDelta delta) throws IOException {
+        StorageProvider storage = StorageProvider.getInstance();
+        for (ImageTransfer image : delta.getUnverified()) {
+            ImageTransfer source = new ImageTransfer(image.getSource(), image.getSource());
+            try (InputStream in = storage.newInputStream(image.getSource())) {
+                FixityManifest.copy(in, null, source);
+            }
+            FixityManifest.calculate(image);
+            delta.verified(image, !source.getChecksum().equals(image.getChecksum()));
+        }
+    }
+
+    /**
+     * Get the problems of the last build or update
+     * 
+     * @return the structure elements and pages that could not be created, empty if the structure is complete
+     */
+    public List<String> getErrors() {
+        return Collections.unmodifiableList(errors);
+    }
+
+    /**
+     * Store the technical metadata of the transferred images in the content files of their pages: the mimetype and a MIX record with size,
+     * resolution and sample format. Images that were not probed during the transfer, because they were copied by a previous run, are probed now
+     * unless their content file already has technical metadata.
+     * 
+     * @param transfers the transfers of all pages
+     */
+    public void applyImageInfo(List<ImageTransfer> transfers) {
+        Map<String, ImageTransfer> transfersByLocation = new HashMap<>();
+        for (ImageTransfer transfer : transfers) {
+            transfersByLocation.put(locationPrefix + transfer.getDestination().toString(), transfer);
+        }
+        if (physical.getAllChildren() == null) {
+            return;
+        }
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        } catch (ParserConfigurationException e) {
+            log.error(e);
+            return;
+        }
+        for (DocStruct page : physical.getAllChildren()) {
+            if (page.getAllContentFiles() == null || page.getAllContentFiles().isEmpty()) {
+                continue;
+            }
+            ContentFile cf = page.getAllContentFiles().get(0);
+            ImageTransfer transfer = transfersByLocation.get(cf.getLocation());
+            if (transfer == null) {
+                continue;
+            }
+            boolean hasTechMd = cf.getTechMds() != null && !cf.getTechMds().isEmpty();
+            ImageInfo info = transfer.getImageInfo();
+            if (info == null && !hasTechMd) {
+                info = ImageProbe.probe(transfer.getDestination());
+            }
+            if (info == null) {
+                continue;
+            }
+            // replace the technical metadata of an image copied again
+            if (hasTechMd) {
+                removeTechMds(cf);
+            }
+            cf.setMimetype(info.getMimetype());
+            Md md = new Md(createMix(document, info), "techMD");
+            md.setId("TECHMD_" + transfer.getDestination().getFileName().toString().replaceAll("[^\\w.-]", "_"));
+            dd.addTechMd(md);
+            cf.addTechMd(md);
+        }
+    }
+
+    /**
+     * Remove the structure elements created by a previous import and their pages, so the structure can be created again without duplicates.
+     * Pages with their image outside of the master folder, e.g. created by another step, are kept.
+     */
+    public void removeImportedStructure() {
+        List<String> importedTypes = configuration.getImportedTypes();
+        Set<DocStruct> importedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (logical.getAllChildren() != null) {
+            for (DocStruct child : new ArrayList<>(logical.getAllChildren())) {
+                if (importedTypes.contains(child.getType().getName())) {
+                    for (Reference ref : child.getAllToReferences("logical_physical")) {
+                        if (getMasterFile(ref.getTarget()) != null) {
+                            importedPages.add(ref.getTarget());
+                        }
+                    }
+                    removeReferences(child);
+                    logical.removeChild(child);
+                }
+            }
+        }
+        for (DocStruct page : importedPages) {
+            removePage(page);
+        }
+        sortChildren(physical, Collections.emptyList(), importedPages);
+    }
+
+    private void removeReferences(DocStruct ds) {
+        for (Reference ref : new ArrayList<>(ds.getAllToReferences("logical_physical"))) {
+            ds.removeReferenceTo(ref.getTarget());
+        }
+    }
+
+    /**
+     * Remove the references and files of a page, the page itself is removed from the physical structure when the pages are sorted
+     */
+    private void removePage(DocStruct page) {
+        if (page.getAllFromReferences() != null) {
+            for (Reference ref : new ArrayList<>(page.getAllFromReferences())) {
+                ref.getSource().removeReferenceTo(page);
+            }
+        }
+        if (page.getAllContentFiles() != null && dd.getFileSet() != null) {
+            for (ContentFile cf : page.getAllContentFiles()) {
+                removeTechMds(cf);
+                dd.getFileSet().removeFile(cf);
+            }
+        }
+    }
+
+    /**
+     * Remove the technical metadata of a content file from the document, otherwise it stays in the amdSec of the METS file
+     */
+    private void removeTechMds(ContentFile cf) {
+        if (cf.getTechMds() != null) {
+            if (dd.getTechMds() != null) {
+                dd.getTechMds().removeAll(cf.getTechMds());
+            }
+            cf.getTechMds().clear();
+        }
+    }
+
+    /**
+     * Create a MIX record of the technical metadata, values missing in the header are left out
+     */
+    private static Element createMix(Document document, ImageInfo info) {
+        Element mix = document.createElementNS(MIX_NAMESPACE, "mix:mix");
+        Element basic = appendElement(document, mix, "BasicImageInformation");
+        Element characteristics = appendElement(document, basic, "BasicImageCharacteristics");
+        if (info.getWidth() > 0 && info.getHeight() > 0) {
+            appendElement(document, characteristics, "imageWidth").setTextContent(String.valueOf(info.getWidth()));
+            appendElement(document, characteristics, "imageHeight").setTextContent(String.valueOf(info.getHeight()));
+        }
+        Element assessment = appendElement(document, mix, "ImageAssessmentMetadata");
+        if (info.getXResolution() > 0 && info.getYResolution() > 0) {
+            Element metrics = appendElement(document, assessment, "SpatialMetrics");
+            // 2: inch
+            appendElement(document, metrics, "samplingFrequencyUnit").setTextContent("2");
+            appendElement(document, appendElement(document, metrics, "xSamplingFrequency"), "numerator")
+                    .setTextContent(String.valueOf(Math.round(info.getXResolution())));
+            appendElement(document, appendElement(document, metrics, "ySamplingFrequency"), "numerator")
+                    .setTextContent(String.valueOf(Math.round(info.getYResolution())));
+        }
+        if (info.getBitsPerSample() > 0 && info.getSamplesPerPixel() > 0) {
+            Element encoding = appendElement(document, assessment, "ImageColorEncoding");
+            Element bits = appendElement(document, encoding, "BitsPerSample");
+            String[] values = new String[info.getSamplesPerPixel()];
+            Arrays.fill(values, String.valueOf(info.getBitsPerSample()));
+            appendElement(document, bits, "bitsPerSampleValue").setTextContent(String.join(",", values));
+            appendElement(document, bits, "bitsPerSampleUnit").setTextContent("integer");
+            appendElement(document, encoding, "samplesPerPixel").setTextContent(String.valueOf(info.getSamplesPerPixel()));
+        }
+        return mix;
+    }
+
+    private static Element appendElement(Document document, Element parent, String name) {
+        Element element = document.createElementNS(MIX_NAMESPACE, "mix:" + name);
+        parent.appendChild(element);
+        return element;
+    }
+
+    private String getLocation(DocStruct page) {
+        if (page.getAllContentFiles() == null || page.getAllContentFiles().isEmpty()) {
+            return null;
+        }
+        String location = page.getAllContentFiles().get(0).getLocation();
+        return location != null && location.startsWith(locationPrefix) ? location : null;
+    }
+
+    /**
+     * Get the image of a page in the master folder
+     * 
+     * @return the image, null if the page has no image in the master folder
+     */
+    private Path getMasterFile(DocStruct page) {
+        String location = getLocation(page);
+        if (location == null) {
+            return null;
+        }
+        Path file = Paths.get(location.substring(locationPrefix.length())).toAbsolutePath().normalize();
+        return file.startsWith(masterFolder) ? file : null;
+    }
+
+    /**
+     * Find the folder of an existing structure element by the images of its pages
+     */
+    private String findFolder(DocStruct ds, Map<String, String> folderOfImage) {
+        for (Reference ref : ds.getAllToReferences("logical_physical")) {
+            String location = getLocation(ref.getTarget());
+            if (location != null) {
+                String folderName = folderOfImage.get(location.substring(location.lastIndexOf('/') + 1));
+                if (folderName != null) {
+                    return folderName;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Check if the image in the master folder must be replaced. If checksums are compared, only the size is checked here, the checksums are
+     * compared later.
+     */
+    private boolean isChanged(ImageTransfer image, boolean compareChecksums) throws IOException {
+        StorageProvider storage = StorageProvider.getInstance();
+        if (!storage.isFileExists(image.getDestination())
+                || storage.getFileSize(image.getSource()) != storage.getFileSize(image.getDestination())) {
+            return true;
+        }
+        return !compareChecksums && storage.getLastModifiedDate(image.getSource()) > storage.getLastModifiedDate(image.getDestination());
+    }
+
+    /**
+     * Sort the children into the planned order at once, moving each child with removeChild and addChild searches the list for every child. The
+     * other children are kept in front, as addChild would have done. UGH returns the list of children itself, so it is changed in place.
+     */
+    private static void sortChildren(DocStruct parent, List<DocStruct> ordered, Set<DocStruct> removed) {
+        List<DocStruct> children = parent.getAllChildren();
+        if (children == null) {
+            return;
+        }
+        Set<DocStruct> sorted = Collections.newSetFromMap(new IdentityHashMap<>());
+        sorted.addAll(ordered);
+        List<DocStruct> result = new ArrayList<>(children.size());
+        for (DocStruct child : children) {
+            if (!sorted.contains(child) && !removed.contains(child)) {
+                result.add(child);
+            }
+        }
+        result.addAll(ordered);
+        children.clear();
+        children.addAll(result);
+    }
+
+    /**
+     * Create the structure element of a folder and a page for each image. Every page gets only its own content file, page numbers and references,
+     * the metadata of the structure element is created in a separate stage after all pages, so the memory needed per page stays the same for
+     * volumes with many pages. If metadataFolders is given, the element is added to it if it got at least one page.
+     */
+    private int createDocstruct(PlannedFolder folder, List<ImageTransfer> images, int imageIndex, Map<DocStruct, String> metadataFolders,
+            List<ImageTransfer> transfers)
+                    throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException, MetadataTypeNotAllowedException {
+        // create docstruct
+        DocStruct ds = createElement(folder);
+
+        // create page elements
+        for (ImageTransfer image : images) {
+            createPage(ds, image, imageIndex);
+            imageIndex = imageIndex + 1;
+
+            // the copy is done after the structure is complete
+            transfers.add(image);
+        }
+
+        if (metadataFolders != null && !images.isEmpty()) {
+            metadataFolders.put(ds, folder.getName());
+        }
+        return imageIndex;
+    }
+
+    private DocStruct createElement(PlannedFolder folder) throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException {
+        DocStruct ds = dd.createDocStruct(configuration.getDocStructType(folder.getDocType()));
+        logical.addChild(ds);
+        return ds;
+    }
+
+    private DocStruct createPage(DocStruct ds, ImageTransfer image, int imageIndex)
+            throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException, MetadataTypeNotAllowedException {
+        DocStruct dsPage = dd.createDocStruct(configuration.getPageType());
+
+        ContentFile cf = new ContentFile();
+        cf.setLocation(locationPrefix + image.getDestination().toString());
+        dsPage.addContentFile(cf);
+        physical.addChild(dsPage);
+        // assign pages to ds and logical
+
+        Metadata mdLogicalPageNo = new Metadata(configuration.getLogType());
+        dsPage.addMetadata(mdLogicalPageNo);
+
+        Metadata mdPhysPageNo = new Metadata(configuration.getPhysType());
+        mdPhysPageNo.setValue(String.valueOf(imageIndex));
+        dsPage.addMetadata(mdPhysPageNo);
+        logical.addReferenceTo(dsPage, "logical_physical");
+        ds.addReferenceTo(dsPage, "logical_physical");
+        return dsPage;
+    }
+}
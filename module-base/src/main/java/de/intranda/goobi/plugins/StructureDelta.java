@@ -0,0 +1,90 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import lombok.Getter;
+
+/**
+ * Result of a delta import: all images of the volume in page order and what changed compared to the existing pages.
+ */
+@Getter
+public class StructureDelta {
+
+    // transfers of all images, in page order
+    private final List<ImageTransfer> transfers = new ArrayList<>();
+
+    // transfers whose file in the master folder is up to date, they are not copied again
+    private final Set<ImageTransfer> unchanged = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // unchanged transfers whose checksums are not compared yet
+    private final List<ImageTransfer> unverified = new ArrayList<>();
+
+    // files in the master folder of removed pages, deleted after the metadata is saved
+    private final List<Path> removedFiles = new ArrayList<>();
+
+    private int addedPages;
+    private int changedPages;
+    private int removedPages;
+
+    void added(ImageTransfer transfer) {
+        transfers.add(transfer);
+        addedPages++;
+    }
+
+    void changed(ImageTransfer transfer) {
+        transfers.add(transfer);
+        changedPages++;
+    }
+
+    void unchanged(ImageTransfer transfer) {
+        transfers.add(transfer);
+        unchanged.add(transfer);
+    }
+
+    void unverified(ImageTransfer transfer) {
+        unchanged(transfer);
+        unverified.add(transfer);
+    }
+
+    void verified(ImageTransfer transfer, boolean changed) {
+        if (changed && unchanged.remove(transfer)) {
+            changedPages++;
+        }
+    }
+
+    void removed(Path file) {
+        if (file != null) {
+            removedFiles.add(file);
+        }
+        removedPages++;
+    }
+
+    @Override
+    public String toString() {
+        return addedPages + " pages added, " + changedPages + " changed, " + removedPages + " removed, " + unchanged.size() + " unchanged";
+    }
+}
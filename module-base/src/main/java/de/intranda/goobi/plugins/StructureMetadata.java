@@ -0,0 +1,138 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.SubnodeConfiguration;
+import org.apache.commons.lang.StringUtils;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Metadata created for each structure element of the main type. The values are templates, {folder} is replaced by the name of the folder and
+ * {date} by the part of the folder name matched by the date pattern. Fields with an empty value are not created.
+ */
+@Log4j2
+public class StructureMetadata {
+
+    public static final String DEFAULT_DATE_PATTERN = "^([^;]*)";
+
+    private final Pattern datePattern;
+
+    private final List<Template> templates;
+
+    private StructureMetadata(Pattern datePattern, List<Template> templates) {
+        this.datePattern = datePattern;
+        this.templates = Collections.unmodifiableList(templates);
+    }
+
+    /**
+     * Read the templates from the &lt;metadata&gt; element of the configuration. Without this element the title "Protokoll vom {folder}" and the
+     * date before the first semicolon as publication year and dating are created.
+     * 
+     * @param myconfig the configuration block of the step
+     * @param prefs the ruleset
+     * @return the templates
+     */
+    public static StructureMetadata create(SubnodeConfiguration myconfig, Prefs prefs) {
+        Pattern datePattern = Pattern.compile(myconfig.getString("/metadata/date/@pattern", DEFAULT_DATE_PATTERN));
+        List<Template> templates = new ArrayList<>();
+        List<HierarchicalConfiguration> fields = myconfig.configurationsAt("/metadata/field");
+        if (fields.isEmpty() && !myconfig.containsKey("/metadata/date/@pattern")) {
+            addTemplate(templates, prefs, "TitleDocMain", "Protokoll vom {folder}");
+            addTemplate(templates, prefs, "PublicationYear", "{date}");
+            addTemplate(templates, prefs, "Dating", "{date}");
+        } else {
+            for (HierarchicalConfiguration field : fields) {
+                addTemplate(templates, prefs, field.getString("@name"), field.getString("@value", ""));
+            }
+        }
+        return new StructureMetadata(datePattern, templates);
+    }
+
+    private static void addTemplate(List<Template> templates, Prefs prefs, String name, String value) {
+        MetadataType type = prefs.getMetadataTypeByName(name);
+        if (type == null) {
+            log.warn("Metadata type {} is not defined in the ruleset and is not created", name);
+            return;
+        }
+        templates.add(new Template(type, value));
+    }
+
+    /**
+     * Get the date contained in a folder name
+     * 
+     * @param folderName name of the structure folder
+     * @return the first group of the date pattern, the complete match if the pattern has no group or an empty string if it does not match
+     */
+    public String getDate(String folderName) {
+        Matcher matcher = datePattern.matcher(folderName);
+        if (!matcher.find()) {
+            return "";
+        }
+        String date = matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+        return date == null ? "" : date;
+    }
+
+    /**
+     * Create the metadata of a structure element, each field once
+     * 
+     * @param ds the structure element
+     * @param folderName name of the folder of the structure element
+     */
+    public void apply(DocStruct ds, String folderName) {
+        String date = getDate(folderName);
+        for (Template template : templates) {
+            String value = template.value.replace("{folder}", folderName).replace("{date}", date);
+            if (StringUtils.isBlank(value)) {
+                continue;
+            }
+            try {
+                Metadata md = new Metadata(template.type);
+                md.setValue(value);
+                ds.addMetadata(md);
+            } catch (UGHException e) {
+                log.error(e);
+            }
+        }
+    }
+
+    private static class Template {
+
+        private final MetadataType type;
+        private final String value;
+
+        private Template(MetadataType type, String value) {
+            this.type = type;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import lombok.extern.log4j.Log4j2;
+import ugh.dl.DocStruct;
+import ugh.dl.MetadataType;
+
+/**
+ * Matches the folders by a lookup table. Each line of the CSV file contains a metadata value of a process and the name of its folder, empty lines
+ * and lines starting with # are ignored. Upper and lower case are ignored in both columns.
+ */
+@Log4j2
+public class TableMatcher implements FolderMatcher {
+
+    private final MetadataType metadataType;
+
+    // normalised metadata value -> normalised folder name
+    private final Map<String, String> table;
+
+    public TableMatcher(MetadataType metadataType, Map<String, String> table) {
+        this.metadataType = metadataType;
+        this.table = Collections.unmodifiableMap(table);
+    }
+
+    /**
+     * Read the lookup table from a CSV file
+     * 
+     * @param metadataType the metadata type of the first column
+     * @param file the CSV file
+     * @param separator the column separator
+     * @return the matcher
+     * @throws IOException if the file cannot be read
+     */
+    public static TableMatcher read(MetadataType metadataType, Path file, String separator) throws IOException {
+        Map<String, String> table = new HashMap<>();
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        for (String line : lines) {
+            if (line.trim().isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] columns = line.split(Pattern.quote(separator), -1);
+            if (columns.length < 2) {
+                log.warn("Line without folder name in {}: {}", file, line);
+                continue;
+            }
+            table.put(FolderMatcher.normalise(unquote(columns[0])), FolderMatcher.normalise(unquote(columns[1])));
+        }
+        log.debug("Read {} entries of {}", table.size(), file);
+        return new TableMatcher(metadataType, table);
+    }
+
+    @Override
+    public String getKey(DocStruct logical) {
+        return table.get(FolderMatcher.normalise(FolderMatcher.getValue(logical, metadataType)));
+    }
+
+    @Override
+    public List<Path> find(RootFolderIndex index, String key) {
+        return index.findByKey(IdentifierMatcher.INDEX_NAME, FolderMatcher::normalise, key);
+    }
+
+    private static String unquote(String value) {
+        String trimmed = value.trim();
+        if (trimmed.length() >= 2 && trimmed.startsWith("\"") && trimmed.endsWith("\"")) {
+            return trimmed.substring(1, trimmed.length() - 1);
+        }
+        return trimmed;
+    }
+}
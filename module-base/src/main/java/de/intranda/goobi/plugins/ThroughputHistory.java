@@ -0,0 +1,94 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Throughput of the completed imports, used to estimate the duration of a planned import. It is stored in the metadata folder, so it survives a
+ * restart of Goobi and is shared by all servers using the same metadata folder. The value is a moving average, recent imports count more.
+ */
+@Log4j2
+public class ThroughputHistory {
+
+    public static final String FILENAME = "folderimport_throughput.txt";
+
+    // weight of the newest import in the moving average
+    private static final double WEIGHT = 0.2;
+
+    private ThroughputHistory() {
+    }
+
+    /**
+     * Get the average throughput of the previous imports
+     * 
+     * @return bytes per second, 0 if nothing was measured yet
+     */
+    public static long read() {
+        Path file = getFile();
+        StorageProvider storage = StorageProvider.getInstance();
+        if (!storage.isFileExists(file)) {
+            return 0;
+        }
+        try (InputStream in = storage.newInputStream(file)) {
+            return Math.max(0, Long.parseLong(new String(in.readAllBytes(), StandardCharsets.UTF_8).trim()));
+        } catch (IOException | NumberFormatException e) {
+            log.warn("Throughput of previous imports is not readable: {}", e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Add the throughput of a completed import to the average. The file is replaced, so a concurrent reader never sees a partial value.
+     * 
+     * @param bytesPerSecond measured throughput of the import, ignored if it is 0
+     */
+    public static synchronized void record(long bytesPerSecond) {
+        if (bytesPerSecond <= 0) {
+            return;
+        }
+        long previous = read();
+        long average = previous == 0 ? bytesPerSecond : Math.round(WEIGHT * bytesPerSecond + (1 - WEIGHT) * previous);
+        Path file = getFile();
+        Path temp = file.resolveSibling(FILENAME + ".tmp");
+        StorageProvider storage = StorageProvider.getInstance();
+        try {
+            try (OutputStream out = storage.newOutputStream(temp)) {
+                out.write(String.valueOf(average).getBytes(StandardCharsets.UTF_8));
+            }
+            storage.move(temp, file);
+        } catch (IOException e) {
+            log.warn("Throughput of the import could not be stored: {}", e.getMessage());
+        }
+    }
+
+    private static Path getFile() {
+        return Paths.get(ConfigurationHelper.getInstance().getMetadataFolder(), FILENAME);
+    }
+}
@@ -0,0 +1,55 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.nio.file.Path;
+import java.util.List;
+
+import ugh.dl.DocStruct;
+import ugh.dl.MetadataType;
+
+/**
+ * Matches the folders whose name starts with the main title up to its last dash. The title "Konsulatsprotokolle 1636 - 1638" matches the folder
+ * "Konsulatsprotokolle 1636-01-21 - 1638-04-17". A title without a dash is used completely.
+ */
+public class TitlePrefixMatcher implements FolderMatcher {
+
+    private final MetadataType titleType;
+
+    public TitlePrefixMatcher(MetadataType titleType) {
+        this.titleType = titleType;
+    }
+
+    @Override
+    public String getKey(DocStruct logical) {
+        String title = FolderMatcher.getValue(logical, titleType);
+        if (title == null) {
+            return null;
+        }
+        int dash = title.lastIndexOf('-');
+        String prefix = dash == -1 ? title : title.substring(0, dash).trim();
+        return prefix.isEmpty() ? null : prefix;
+    }
+
+    @Override
+    public List<Path> find(RootFolderIndex index, String key) {
+        return index.findByPrefix(key);
+    }
+}
@@ -0,0 +1,36 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+
+/**
+ * Gets notified by the {@link ImageTransferExecutor} after an image was transferred into the master folder.
+ */
+public interface TransferListener {
+
+    /**
+     * Called from the worker thread after the transfer was completed. Implementations must be thread safe.
+     * 
+     * @param transfer the completed transfer
+     * @throws IOException if the listener fails, the transfer is treated as failed
+     */
+    void transferred(ImageTransfer transfer) throws IOException;
+}
@@ -0,0 +1,54 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+/**
+ * Defines how an image gets from the import folder into the master folder. All strategies except {@link #COPY} are only used when source and
+ * destination are located on the same file store, otherwise the image is copied.
+ */
+public enum TransferStrategy {
+
+    // copy every byte, the source stays untouched
+    COPY,
+    // create a hard link to the source file
+    HARDLINK,
+    // create a copy-on-write clone if the file system supports it, copy otherwise
+    REFLINK_OR_COPY,
+    // move the source file, the source folder is empty afterwards
+    MOVE;
+
+    /**
+     * Get the strategy for a configured value, unknown or empty values are interpreted as {@link #COPY}
+     * 
+     * @param value the configured value, e.g. "hardlink" or "reflink-or-copy"
+     * @return the matching strategy
+     */
+    public static TransferStrategy getByName(String value) {
+        if (value != null) {
+            String name = value.trim().replace('-', '_');
+            for (TransferStrategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(name)) {
+                    return strategy;
+                }
+            }
+        }
+        return COPY;
+    }
+}
@@ -0,0 +1,142 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Lists the structure folders of a volume concurrently and reads the sizes of their images, so the copies can be scheduled by size. On Java 21 and
+ * newer virtual threads are used, otherwise a fixed thread pool. In both cases the number of concurrent listings is limited.
+ */
+@Log4j2
+public class VolumeScanner {
+
+    // maximum number of concurrent listings
+    private final int threads;
+
+    // 1 reads only the images of the structure folders, higher values include deeper sub folders
+    private final int depth;
+
+    public VolumeScanner(int threads, int depth) {
+        this.threads = Math.max(1, threads);
+        this.depth = Math.max(1, depth);
+    }
+
+    /**
+     * Scan the volume folder
+     * 
+     * @param volumeFolder the folder of the volume
+     * @return the snapshot of all structure folders and their images
+     * @throws InterruptedException if the calling thread was interrupted while waiting for the listings
+     */
+    public VolumeSnapshot scan(Path volumeFolder) throws InterruptedException {
+        List<String> folderNames = new ArrayList<>();
+        for (String name : StorageProvider.getInstance().list(volumeFolder.toString())) {
+            // ignore files like manifests in the main folder
+            if (StorageProvider.getInstance().isDirectory(volumeFolder.resolve(name))) {
+                folderNames.add(name);
+            }
+        }
+        Collections.sort(folderNames);
+
+        Map<String, Future<List<Path>>> futures = new LinkedHashMap<>();
+        Map<String, long[]> sizes = new ConcurrentHashMap<>();
+        Semaphore permits = new Semaphore(threads);
+        ExecutorService executor = createExecutor();
+        try {
+            for (String folderName : folderNames) {
+                futures.put(folderName, executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        List<Path> images = new ArrayList<>();
+                        collectImages(volumeFolder.resolve(folderName), 1, images);
+                        Collections.sort(images);
+                        sizes.put(folderName, readSizes(images));
+                        return Collections.unmodifiableList(images);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+            Map<String, List<Path>> images = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<List<Path>>> entry : futures.entrySet()) {
+                try {
+                    images.put(entry.getKey(), entry.getValue().get());
+                } catch (ExecutionException e) {
+                    log.error("Cannot list {}", volumeFolder.resolve(entry.getKey()), e.getCause());
+                    images.put(entry.getKey(), Collections.emptyList());
+                }
+            }
+            return new VolumeSnapshot(volumeFolder, images, sizes);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void collectImages(Path folder, int level, List<Path> images) {
+        for (Path path : StorageProvider.getInstance().listFiles(folder.toString())) {
+            // only check for folders if deeper levels are configured, this saves a request for each image
+            if (level < depth && StorageProvider.getInstance().isDirectory(path)) {
+                collectImages(path, level + 1, images);
+            } else {
+                images.add(path);
+            }
+        }
+    }
+
+    private long[] readSizes(List<Path> images) {
+        long[] sizes = new long[images.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            try {
+                sizes[i] = StorageProvider.getInstance().getFileSize(images.get(i));
+            } catch (IOException e) {
+                // read again when the import is planned
+                sizes[i] = -1;
+            }
+        }
+        return sizes;
+    }
+
+    private ExecutorService createExecutor() {
+        try {
+            Method virtualThreads = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreads.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // java 17 or older
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+}
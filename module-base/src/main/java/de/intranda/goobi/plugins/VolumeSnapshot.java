@@ -0,0 +1,101 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable result of scanning the folder of a volume: the names of the structure folders, the images within each of them and their sizes.
+ */
+public class VolumeSnapshot {
+
+    private final Path volumeFolder;
+
+    // folder name -> images, sorted by path
+    private final Map<String, List<Path>> images;
+
+    // folder name -> sizes of the images in the same order, missing if the sizes were not read
+    private final Map<String, long[]> sizes;
+
+    // number of images in all structure folders
+    private final int imageCount;
+
+    public VolumeSnapshot(Path volumeFolder, Map<String, List<Path>> images) {
+        this(volumeFolder, images, Collections.emptyMap());
+    }
+
+    public VolumeSnapshot(Path volumeFolder, Map<String, List<Path>> images, Map<String, long[]> sizes) {
+        this.volumeFolder = volumeFolder;
+        this.images = Collections.unmodifiableMap(images);
+        this.sizes = Collections.unmodifiableMap(sizes);
+        int count = 0;
+        for (List<Path> folderImages : images.values()) {
+            count += folderImages.size();
+        }
+        imageCount = count;
+    }
+
+    public Path getVolumeFolder() {
+        return volumeFolder;
+    }
+
+    /**
+     * Get the names of all structure folders of the volume
+     * 
+     * @return the folder names, sorted by name
+     */
+    public List<String> getFolderNames() {
+        return List.copyOf(images.keySet());
+    }
+
+    /**
+     * Get the number of images in all structure folders, before the include and exclude rules are applied
+     * 
+     * @return the number of images
+     */
+    public int getImageCount() {
+        return imageCount;
+    }
+
+    /**
+     * Get the images of a structure folder, including the images of deeper sub folders if they were scanned
+     * 
+     * @param folderName name of the structure folder
+     * @return the images, sorted by path, or an empty list if the folder is unknown
+     */
+    public List<Path> getImages(String folderName) {
+        return images.getOrDefault(folderName, Collections.emptyList());
+    }
+
+    /**
+     * Get the size of an image read during the scan
+     * 
+     * @param folderName name of the structure folder
+     * @param index position of the image in {@link #getImages(String)}
+     * @return the size in bytes, -1 if it is not known
+     */
+    public long getSize(String folderName, int index) {
+        long[] folderSizes = sizes.get(folderName);
+        return folderSizes == null || index >= folderSizes.length ? -1 : folderSizes[index];
+    }
+}
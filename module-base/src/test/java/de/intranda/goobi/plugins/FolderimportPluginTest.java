@@ -1,16 +1,36 @@
 package de.intranda.goobi.plugins;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
 
 import org.apache.commons.configuration.ConfigurationException;
 import org.apache.commons.configuration.SubnodeConfiguration;
@@ -33,6 +53,9 @@ import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
 import de.sub.goobi.config.ConfigPlugins;
 import de.sub.goobi.config.ConfigurationHelper;
 import de.sub.goobi.helper.VariableReplacer;
@@ -40,7 +63,12 @@ import de.sub.goobi.helper.enums.StepStatus;
 import de.sub.goobi.metadaten.MetadatenHelper;
 import de.sub.goobi.persistence.managers.MetadataManager;
 import de.sub.goobi.persistence.managers.ProcessManager;
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
 import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
 import ugh.dl.Prefs;
 import ugh.fileformats.mets.MetsMods;
 
@@ -57,6 +85,7 @@ public class FolderimportPluginTest {
     private File metadataDirectory;
     private Process process;
     private Prefs prefs;
+    private Fileformat fileformat;
 
     @Test
     public void testInitialize() throws IOException {
@@ -81,6 +110,704 @@ public class FolderimportPluginTest {
 
     }
 
+    @Test
+    public void testVolumeAmongManyVolumes() throws Exception {
+        // the load run with production sizes is LargeVolumeImportBenchmark in module-benchmark
+        int pages = 25;
+        File root = folder.newFolder("load");
+        VolumeFixture.createRootFolder(root.toPath(), 20);
+        List<String> images = VolumeFixture.createVolume(root.toPath().resolve("Konsulatsprotokolle 1636-01-21 - 1638-04-17"), pages, 10, 1024);
+
+        FolderimportStepPlugin plugin = new FolderimportStepPlugin();
+        plugin.initialize(process.getSchritte().get(0), "");
+        plugin.setRootFolder(root.getAbsolutePath());
+        assertEquals(PluginReturnValue.FINISH, plugin.run());
+
+        // all pages in the order of the folders, each with its own file
+        ImageNameRules rules = new FolderimportConfiguration(getConfig(), prefs).getImageNameRules();
+        MetadataType physType = prefs.getMetadataTypeByName("physPageNumber");
+        List<DocStruct> importedPages = fileformat.getDigitalDocument().getPhysicalDocStruct().getAllChildren();
+        assertEquals(pages, importedPages.size());
+        Set<String> names = new HashSet<>();
+        for (int i = 0; i < pages; i++) {
+            DocStruct page = importedPages.get(i);
+            String location = page.getAllContentFiles().get(0).getLocation();
+            String name = location.substring(location.lastIndexOf('/') + 1);
+            assertEquals(rules.sanitise(images.get(i).replace('/', '_')), name);
+            assertEquals(String.valueOf(i + 1), page.getAllMetadataByType(physType).get(0).getValue());
+            names.add(name.toLowerCase(Locale.ROOT));
+        }
+        assertEquals(pages, names.size());
+        assertEquals(pages, new File(process.getImagesOrigDirectory(false)).list().length);
+    }
+
+    @Test
+    public void testPlanOnly() throws Exception {
+        File root = folder.newFolder("plan");
+        VolumeFixture.createVolume(root.toPath().resolve("Konsulatsprotokolle 1636-01-21 - 1638-04-17"), 10, 4, 1024);
+        // earlier imports copied 1024 bytes per second
+        ThroughputHistory.record(1024);
+        assertEquals(1024, ThroughputHistory.read());
+
+        SubnodeConfiguration config = getConfig();
+        config.setProperty("planOnly", true);
+        FolderimportStepPlugin plugin = new FolderimportStepPlugin();
+        plugin.initialize(process.getSchritte().get(0), new FolderimportConfiguration(config, prefs));
+        plugin.setRootFolder(root.getAbsolutePath());
+        assertEquals(PluginReturnValue.WAIT, plugin.run());
+
+        Path planFile = processDirectory.toPath().resolve(ImportPlan.FILENAME);
+        JsonObject plan = JsonParser.parseString(new String(Files.readAllBytes(planFile), StandardCharsets.UTF_8)).getAsJsonObject();
+        assertEquals(0, plan.getAsJsonArray("errors").size());
+        assertEquals(5, plan.getAsJsonArray("folders").size());
+        assertEquals(10, plan.getAsJsonArray("pages").size());
+        assertEquals(10, plan.get("files").getAsInt());
+        assertEquals(10240, plan.get("bytes").getAsLong());
+        assertEquals(1024, plan.get("throughputBytesPerSecond").getAsLong());
+        assertEquals(10, plan.get("estimatedSeconds").getAsLong());
+        // nothing was copied
+        assertEquals(0, new File(process.getImagesOrigDirectory(false)).list().length);
+    }
+
+    @Test
+    public void testRunBatch() throws Exception {
+        File root = folder.newFolder("batch");
+        VolumeFixture.createVolume(root.toPath().resolve("Konsulatsprotokolle 1636-01-21 - 1638-04-17"), 4, 4, 1024);
+        // the imports of the batch read the root folder from the configuration of their step, cached under the title of the step
+        SubnodeConfiguration config = getConfig();
+        config.setProperty("imageFolder", root.getAbsolutePath());
+        PowerMock.mockStatic(ConfigPlugins.class);
+        EasyMock.expect(ConfigPlugins.getProjectAndStepConfig(EasyMock.anyString(), EasyMock.anyObject(Step.class))).andReturn(config).anyTimes();
+        PowerMock.replay(ConfigPlugins.class);
+
+        // the step of the plugin is not the first step of the process
+        Step importStep = new Step();
+        importStep.setReihenfolge(2);
+        importStep.setProzess(process);
+        importStep.setTitel("batch import");
+        importStep.setBearbeitungsstatusEnum(StepStatus.OPEN);
+        process.getSchritte().add(importStep);
+        // the second process has no step with exactly this title
+        Process other = new Process();
+        other.setTitel("Other");
+        other.setProjekt(process.getProjekt());
+        other.setId(2);
+        Step otherStep = new Step();
+        otherStep.setProzess(other);
+        otherStep.setTitel("Batch import");
+        other.setSchritte(new ArrayList<>(Collections.singletonList(otherStep)));
+
+        FolderimportStepPlugin plugin = new FolderimportStepPlugin();
+        plugin.initialize(importStep, "");
+        Map<Integer, PluginReturnValue> results = plugin.runBatch(Arrays.asList(process, other));
+        assertEquals(Arrays.asList(1, 2), new ArrayList<>(results.keySet()));
+        assertEquals(PluginReturnValue.FINISH, results.get(1));
+        assertEquals(PluginReturnValue.ERROR, results.get(2));
+        assertEquals(4, fileformat.getDigitalDocument().getPhysicalDocStruct().getAllChildren().size());
+        assertEquals(4, new File(process.getImagesOrigDirectory(false)).list().length);
+    }
+
+    @Test
+    public void testRootFolderIndex() throws Exception {
+        File root = folder.newFolder("root");
+        new File(root, "Konsulatsprotokolle 1636-01-21 - 1638-04-17").mkdir();
+        new File(root, "Konsulatsprotokolle 1640-01-02 - 1641-12-30").mkdir();
+        new File(root, "Ratsprotokolle 1636-01-21 - 1638-04-17").mkdir();
+
+        RootFolderIndex index = RootFolderIndex.getInstance(root.getAbsolutePath());
+        List<Path> found = index.findByPrefix("Konsulatsprotokolle 1636");
+        assertEquals(1, found.size());
+        assertEquals("Konsulatsprotokolle 1636-01-21 - 1638-04-17", found.get(0).getFileName().toString());
+        assertEquals(2, index.findByPrefix("Konsulatsprotokolle").size());
+        assertTrue(index.findByPrefix("Stadtbuch").isEmpty());
+
+        // new folder must be found after the modification date of the root folder changed
+        File added = new File(root, "Stadtbuch 1600-01-01 - 1601-01-01");
+        added.mkdir();
+        root.setLastModified(root.lastModified() + 2000);
+        assertEquals(1, index.findByPrefix("Stadtbuch").size());
+
+        // a folder is found even if the modification date of the root folder did not change, e.g. on a network share
+        long modified = root.lastModified();
+        new File(root, "Stadtbuch 1700-01-01 - 1701-01-01").mkdir();
+        root.setLastModified(modified);
+        assertEquals(1, index.findByPrefix("Stadtbuch 1700").size());
+        new File(root, "Stadtrechnungen 1650-01-01 - 1651-01-01").mkdir();
+        root.setLastModified(modified);
+        assertEquals(1, index.findByKey("title", name -> name.substring(0, name.indexOf(' ')), "Stadtrechnungen").size());
+    }
+
+    @Test
+    public void testFolderMatchers() throws Exception {
+        File root = folder.newFolder("matchers");
+        new File(root, "PPN123456789").mkdir();
+        new File(root, "Scan_PPN987654321_1636").mkdir();
+        new File(root, "Stadtbuch").mkdir();
+        RootFolderIndex index = RootFolderIndex.getInstance(root.getAbsolutePath());
+
+        IdentifierMatcher identifier = new IdentifierMatcher(prefs.getMetadataTypeByName("CatalogIDDigital"));
+        assertEquals(1, identifier.find(index, FolderMatcher.normalise(" ppn123456789")).size());
+        assertTrue(identifier.find(index, "ppn987654321").isEmpty());
+
+        RegexMatcher regex = new RegexMatcher(prefs.getMetadataTypeByName("CatalogIDDigital"), Pattern.compile("^Scan_(PPN\\d+)_"), null);
+        List<Path> found = regex.find(index, "ppn987654321");
+        assertEquals(1, found.size());
+        assertEquals("Scan_PPN987654321_1636", found.get(0).getFileName().toString());
+    }
+
+    @Test
+    public void testImageNameRules() {
+        ImageNameRules rules = new ImageNameRules(Arrays.asList("*.tif", "*.jpg"), ImageNameRules.DEFAULT_EXCLUDES, "", "_");
+        assertTrue(rules.accept("0001.tif"));
+        assertTrue(rules.accept("0001.TIF"));
+        assertFalse(rules.accept("0001.xml"));
+        assertFalse(rules.accept("Thumbs.db"));
+
+        rules = new ImageNameRules(Collections.emptyList(), Arrays.asList("Thumbs.db", "._*", "*.xml"), "", "_");
+        assertTrue(rules.accept("0001.png"));
+        assertFalse(rules.accept("thumbs.db"));
+        assertFalse(rules.accept("._0001.tif"));
+        assertFalse(rules.accept("mets.XML"));
+
+        assertEquals("1636-01-21_0001.tif".replaceAll("[^\\w_\\.]", "_"), rules.sanitise("1636-01-21_0001.tif"));
+        assertEquals("Buchr_cken_0001.tif", rules.sanitise("Buchrücken_0001.tif"));
+        String unchanged = "Titelblatt_0001.tif";
+        assertSame(unchanged, rules.sanitise(unchanged));
+    }
+
+    @Test
+    public void testStructureMetadata() {
+        StructureMetadata metadata = StructureMetadata.create(getConfig(), prefs);
+        assertEquals("1636-01-21", metadata.getDate("1636-01-21; 1636-01-22"));
+        assertEquals("1636-01-21", metadata.getDate("1636-01-21"));
+        assertEquals("", metadata.getDate("; 1636-01-22"));
+    }
+
+    @Test
+    public void testStructureMetadataPerFolder() throws Exception {
+        Path volume = folder.newFolder("structure_metadata").toPath();
+        Path master = folder.newFolder("structure_metadata_master").toPath();
+        List<String> folderNames = Arrays.asList("1636-01-21; 1636-01-22", "1636-01-23");
+        for (String folderName : folderNames) {
+            Path structureFolder = Files.createDirectories(volume.resolve(folderName));
+            for (int page = 1; page <= 3; page++) {
+                Files.write(structureFolder.resolve(String.format("%04d.tif", page)), new byte[] { 1 });
+            }
+        }
+
+        FolderimportConfiguration configuration = new FolderimportConfiguration(getConfig(), prefs);
+        DigitalDocument dd = fileformat.getDigitalDocument();
+        DocStruct logical = dd.getLogicalDocStruct();
+        if (logical.getType().isAnchor()) {
+            logical = logical.getAllChildren().get(0);
+        }
+        StructureBuilder builder = new StructureBuilder(configuration, dd, logical, dd.getPhysicalDocStruct(), master.toString());
+        builder.removeImportedStructure();
+        assertEquals(6, builder.build(new VolumeScanner(2, 1).scan(volume)).size());
+        assertTrue(builder.getErrors().isEmpty());
+
+        // every element got the metadata of its own folder once, not once per page
+        List<DocStruct> elements = getImportedElements(configuration, logical);
+        assertEquals(folderNames.size(), elements.size());
+        List<String> dates = Arrays.asList("1636-01-21", "1636-01-23");
+        for (int i = 0; i < elements.size(); i++) {
+            DocStruct element = elements.get(i);
+            assertEquals(3, element.getAllToReferences("logical_physical").size());
+            assertEquals("Protokoll vom " + folderNames.get(i), getSingleValue(element, "TitleDocMain"));
+            assertEquals(dates.get(i), getSingleValue(element, "PublicationYear"));
+            assertEquals(dates.get(i), getSingleValue(element, "Dating"));
+        }
+    }
+
+    @Test
+    public void testConfigurationValidation() {
+        FolderimportConfiguration configuration = new FolderimportConfiguration(getConfig(), prefs);
+        assertTrue(configuration.isValid());
+        assertNotNull(configuration.getDocStructType("Sequence"));
+
+        SubnodeConfiguration config = getConfig();
+        config.setProperty("mainType", "UnknownType");
+        configuration = new FolderimportConfiguration(config, prefs);
+        assertFalse(configuration.isValid());
+        assertEquals(1, configuration.getErrors().size());
+    }
+
+    @Test
+    public void testPreflightCheck() throws Exception {
+        File volume = folder.newFolder("preflight");
+        new File(volume, "1636-01-21").mkdir();
+        new File(volume, "1636-01-22").mkdir();
+        Files.write(new File(volume, "1636-01-21/0001.tif").toPath(), new byte[10]);
+        Files.write(new File(volume, "1636-01-21/0002.tif").toPath(), new byte[0]);
+        Path master = folder.getRoot().toPath().resolve("preflight_master");
+
+        FolderimportConfiguration configuration = new FolderimportConfiguration(getConfig(), prefs);
+        VolumeSnapshot snapshot = new VolumeScanner(2, 1).scan(volume.toPath());
+        ImportPlanner planner = new ImportPlanner(configuration, master.toString());
+        List<ImageTransfer> transfers = new ArrayList<>();
+        for (PlannedFolder plannedFolder : planner.orderFolders(snapshot)) {
+            transfers.addAll(planner.planImages(snapshot, plannedFolder.getName()));
+        }
+        List<String> problems = new PreflightCheck(configuration).check(snapshot, transfers, Collections.emptySet(), master);
+        assertEquals(2, problems.size());
+        assertTrue(problems.get(0).endsWith("1636-01-22 contains no images."));
+        assertTrue(problems.get(1).endsWith("0002.tif is empty."));
+        assertFalse(Files.exists(master));
+    }
+
+    @Test
+    public void testFindCollisions() {
+        Path master = Paths.get("master_media");
+        ImageTransfer first = new ImageTransfer(Paths.get("a", "0001.tif"), master.resolve("Sequence_0001.tif"));
+        ImageTransfer second = new ImageTransfer(Paths.get("b", "0001.tif"), master.resolve("Sequence_0002.tif"));
+        ImageTransfer third = new ImageTransfer(Paths.get("c", "0001.TIF"), master.resolve("sequence_0001.TIF"));
+        List<List<ImageTransfer>> collisions = ImportPlanner.findCollisions(Arrays.asList(first, second, third));
+        assertEquals(1, collisions.size());
+        assertEquals(Arrays.asList(first, third), collisions.get(0));
+    }
+
+    @Test
+    public void testDeltaImport() throws Exception {
+        Path volume = folder.newFolder("delta").toPath();
+        Path master = folder.newFolder("delta_master").toPath();
+        Path first = Files.write(Files.createDirectories(volume.resolve("1636-01-21")).resolve("0001.tif"), "first".getBytes());
+        Path removed = Files.write(volume.resolve("1636-01-21").resolve("0002.tif"), "removed".getBytes());
+        Path changed = Files.write(Files.createDirectories(volume.resolve("1636-01-22")).resolve("0001.tif"), "changed".getBytes());
+
+        FolderimportConfiguration configuration = new FolderimportConfiguration(getConfig(), prefs);
+        DigitalDocument dd = fileformat.getDigitalDocument();
+        DocStruct logical = dd.getLogicalDocStruct();
+        if (logical.getType().isAnchor()) {
+            logical = logical.getAllChildren().get(0);
+        }
+        StructureBuilder builder = new StructureBuilder(configuration, dd, logical, dd.getPhysicalDocStruct(), master.toString());
+        builder.removeImportedStructure();
+        for (ImageTransfer transfer : builder.build(new VolumeScanner(2, 1).scan(volume))) {
+            Files.copy(transfer.getSource(), transfer.getDestination());
+        }
+        DocStruct element = getImportedElements(configuration, logical).get(0);
+        // a page of another step with its image outside of the master folder
+        Path derivative = Files.write(folder.newFolder("delta_derivatives").toPath().resolve("0001.jpg"), "derivative".getBytes());
+        DocStruct foreignPage = dd.createDocStruct(configuration.getPageType());
+        ContentFile foreignFile = new ContentFile();
+        foreignFile.setLocation("file://" + derivative.toAbsolutePath());
+        foreignPage.addContentFile(foreignFile);
+        dd.getPhysicalDocStruct().addChild(foreignPage);
+
+        // one page removed, one added, one changed and a new folder in front of the others
+        Files.delete(removed);
+        Files.write(volume.resolve("1636-01-21").resolve("0003.tif"), "added".getBytes());
+        Files.write(changed, "changed again".getBytes());
+        Files.write(Files.createDirectories(volume.resolve("1636-01-20")).resolve("0001.tif"), "new folder".getBytes());
+        StructureDelta delta = builder.update(new VolumeScanner(2, 1).scan(volume), false);
+        assertTrue(builder.getErrors().isEmpty());
+        assertEquals(2, delta.getAddedPages());
+        assertEquals(1, delta.getChangedPages());
+        assertEquals(1, delta.getRemovedPages());
+        assertEquals(1, delta.getUnchanged().size());
+        assertEquals(Collections.singletonList(master.resolve("1636_01_21_0002.tif")), delta.getRemovedFiles());
+        assertTrue(Files.exists(derivative));
+
+        // pages sorted into the order of the folders and numbered again, the page of the other step is kept in front of them
+        List<String> expected = Arrays.asList("1636_01_20_0001.tif", "1636_01_21_0001.tif", "1636_01_21_0003.tif", "1636_01_22_0001.tif");
+        List<DocStruct> pages = dd.getPhysicalDocStruct().getAllChildren();
+        assertSame(foreignPage, pages.get(0));
+        pages = pages.subList(1, pages.size());
+        assertEquals(expected.size(), pages.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertTrue(pages.get(i).getAllContentFiles().get(0).getLocation().endsWith("/" + expected.get(i)));
+            assertEquals(String.valueOf(i + 1), pages.get(i).getAllMetadataByType(configuration.getPhysType()).get(0).getValue());
+            assertEquals(expected.get(i), delta.getTransfers().get(i).getDestination().getFileName().toString());
+        }
+        // the existing element is kept with its remaining pages, the new folder got a new element in front of it
+        List<DocStruct> elements = getImportedElements(configuration, logical);
+        assertEquals(3, elements.size());
+        assertSame(element, elements.get(1));
+        assertEquals(2, element.getAllToReferences("logical_physical").size());
+
+        // copy the images like the import, then change an image without changing its size or making it newer than the master file
+        for (ImageTransfer transfer : delta.getTransfers()) {
+            if (!delta.getUnchanged().contains(transfer)) {
+                Files.copy(transfer.getSource(), transfer.getDestination(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.write(first, "FIRST".getBytes());
+        Files.setLastModifiedTime(first, FileTime.fromMillis(0));
+        assertEquals(4, builder.update(new VolumeScanner(2, 1).scan(volume), false).getUnchanged().size());
+        delta = builder.update(new VolumeScanner(2, 1).scan(volume), true);
+        assertEquals(4, delta.getUnchanged().size());
+        builder.compareChecksums(delta);
+        assertEquals(1, delta.getChangedPages());
+        assertEquals(3, delta.getUnchanged().size());
+        assertEquals(5, dd.getPhysicalDocStruct().getAllChildren().size());
+    }
+
+    @Test
+    public void testFixityManifest() throws Exception {
+        Path volume = folder.newFolder("fixity").toPath();
+        Path processFolder = folder.newFolder("fixity_process").toPath();
+        List<ImageTransfer> transfers = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            Path image = Files.write(Files.createDirectories(volume.resolve("1636-01-21")).resolve("000" + i + ".tif"), ("image " + i).getBytes());
+            Path master = Files.createDirectories(processFolder.resolve("images/master_media")).resolve("Sequence_000" + i + ".tif");
+            ImageTransfer transfer = new ImageTransfer(image, Files.copy(image, master));
+            FixityManifest.calculate(transfer);
+            transfers.add(transfer);
+        }
+        // no manifest in the import folder, nothing to compare
+        assertTrue(FixityManifest.verify(volume, transfers).isEmpty());
+
+        // sha256sum output with binary marker and a BagIt payload folder
+        Files.write(volume.resolve(FixityManifest.MANIFEST_SHA256), Arrays.asList(transfers.get(0).getChecksum() + " *data/1636-01-21/0001.tif",
+                transfers.get(1).getChecksum().toUpperCase(Locale.ROOT) + "  1636-01-21/0002.tif"));
+        assertTrue(FixityManifest.verify(volume, transfers).isEmpty());
+        Files.write(volume.resolve(FixityManifest.MANIFEST_MD5), Arrays.asList(transfers.get(0).getMd5() + "  1636-01-21/0001.tif",
+                transfers.get(0).getMd5() + "  1636-01-21/0002.tif"));
+        assertEquals(Collections.singletonList(transfers.get(1)), FixityManifest.verify(volume, transfers));
+
+        // the manifests of the process list the master files relative to the process folder
+        FixityManifest.write(processFolder, transfers);
+        assertEquals(transfers.get(1).getChecksum() + "  images/master_media/Sequence_0002.tif",
+                Files.readAllLines(processFolder.resolve(FixityManifest.MANIFEST_SHA256)).get(1));
+        assertEquals(transfers.get(0).getMd5() + "  images/master_media/Sequence_0001.tif",
+                Files.readAllLines(processFolder.resolve(FixityManifest.MANIFEST_MD5)).get(0));
+
+        // the import of a volume with a changed image fails before the manifest of the process is written
+        File root = folder.newFolder("fixity_root");
+        Path delivery = root.toPath().resolve("Konsulatsprotokolle 1636-01-21 - 1638-04-17");
+        List<String> images = VolumeFixture.createVolume(delivery, 4, 4, 1024);
+        List<String> manifest = new ArrayList<>();
+        for (String image : images) {
+            byte[] sha256 = FixityManifest.getDigest("SHA-256").digest(Files.readAllBytes(delivery.resolve(image)));
+            manifest.add(FixityManifest.toHex(sha256) + "  " + image);
+        }
+        manifest.set(2, manifest.get(2).replaceFirst("^.", manifest.get(2).startsWith("0") ? "1" : "0"));
+        Files.write(delivery.resolve(FixityManifest.MANIFEST_SHA256), manifest);
+        SubnodeConfiguration config = getConfig();
+        config.setProperty("fixity/@failOnMismatch", true);
+        FolderimportStepPlugin plugin = new FolderimportStepPlugin();
+        plugin.initialize(process.getSchritte().get(0), new FolderimportConfiguration(config, prefs));
+        plugin.setRootFolder(root.getAbsolutePath());
+        assertEquals(PluginReturnValue.ERROR, plugin.run());
+        assertFalse(Files.exists(processDirectory.toPath().resolve(FixityManifest.MANIFEST_SHA256)));
+    }
+
+    @Test
+    public void testRemoveImportedStructure() throws Exception {
+        Path volume = folder.newFolder("remove").toPath();
+        Path master = folder.newFolder("remove_master").toPath();
+        Files.write(Files.createDirectories(volume.resolve("1636-01-21")).resolve("0001.tif"), new byte[] { 1 });
+        Files.write(volume.resolve("1636-01-21").resolve("0002.tif"), new byte[] { 2 });
+
+        FolderimportConfiguration configuration = new FolderimportConfiguration(getConfig(), prefs);
+        DigitalDocument dd = fileformat.getDigitalDocument();
+        DocStruct logical = dd.getLogicalDocStruct();
+        if (logical.getType().isAnchor()) {
+            logical = logical.getAllChildren().get(0);
+        }
+        DocStruct physical = dd.getPhysicalDocStruct();
+        StructureBuilder builder = new StructureBuilder(configuration, dd, logical, physical, master.toString());
+        builder.removeImportedStructure();
+        // a cover scanned by an earlier step, its image is not in the master folder
+        DocStruct cover = dd.createDocStruct(configuration.getPageType());
+        ContentFile coverFile = new ContentFile();
+        coverFile.setLocation("file://" + folder.getRoot().toPath().resolve("scans/cover.tif").toAbsolutePath());
+        cover.addContentFile(coverFile);
+        physical.addChild(cover);
+        logical.addReferenceTo(cover, "logical_physical");
+        builder.build(new VolumeScanner(2, 1).scan(volume));
+        assertEquals(3, physical.getAllChildren().size());
+        assertEquals(1, getImportedElements(configuration, logical).size());
+
+        // only the imported element and its pages are removed
+        builder.removeImportedStructure();
+        assertTrue(getImportedElements(configuration, logical).isEmpty());
+        assertEquals(Collections.singletonList(cover), physical.getAllChildren());
+        assertEquals(1, logical.getAllToReferences("logical_physical").size());
+        assertSame(cover, logical.getAllToReferences("logical_physical").get(0).getTarget());
+    }
+
+    @Test
+    public void testJournalContinuesInterruptedImport() throws Exception {
+        List<ImageTransfer> transfers = createJournalTransfers("journal_interrupted");
+        File processFolder = folder.newFolder("journal_interrupted_process");
+
+        ImportJournal journal = ImportJournal.open(processFolder.getAbsolutePath());
+        assertFalse(journal.isPreviousImport());
+        assertEquals(2, journal.plan(transfers).size());
+        // only the first image was copied before the import stopped
+        Files.copy(transfers.get(0).getSource(), transfers.get(0).getDestination());
+        journal.transferred(transfers.get(0));
+        journal.close();
+
+        journal = ImportJournal.open(processFolder.getAbsolutePath());
+        assertTrue(journal.isPreviousImport());
+        assertEquals(Collections.singletonList(transfers.get(1)), journal.plan(transfers));
+        journal.close();
+
+        // a torn file with the recorded size is copied again
+        Files.write(transfers.get(0).getDestination(), new byte[(int) transfers.get(0).getSize()]);
+        journal = ImportJournal.open(processFolder.getAbsolutePath());
+        assertEquals(2, journal.plan(transfers).size());
+        journal.close();
+    }
+
+    @Test
+    public void testJournalResumesInterruptedMove() throws Exception {
+        List<ImageTransfer> transfers = createJournalTransfers("journal_move");
+        File processFolder = folder.newFolder("journal_move_process");
+        Path master = transfers.get(0).getDestination().getParent();
+
+        ImportJournal journal = ImportJournal.open(processFolder.getAbsolutePath());
+        ImageTransferExecutor executor = new ImageTransferExecutor(1, TransferStrategy.MOVE);
+        executor.addListener(journal);
+        // only the first image was moved before the import stopped
+        assertEquals(2, journal.plan(transfers).size());
+        assertTrue(executor.execute(transfers.subList(0, 1)).isEmpty());
+        journal.close();
+        assertFalse(Files.exists(transfers.get(0).getSource()));
+
+        // the next run moves the image back, so it is found in the volume folder and gets its page again
+        journal = ImportJournal.open(processFolder.getAbsolutePath());
+        assertEquals(1, journal.restoreMovedImages(master));
+        assertTrue(Files.exists(transfers.get(0).getSource()));
+        assertFalse(Files.exists(transfers.get(0).getDestination()));
+        assertEquals(0, journal.restoreMovedImages(master));
+        executor = new ImageTransferExecutor(1, TransferStrategy.MOVE);
+        executor.addListener(journal);
+        assertTrue(executor.execute(journal.plan(transfers)).isEmpty());
+        journal.finish(null);
+        for (ImageTransfer transfer : transfers) {
+            assertFalse(Files.exists(transfer.getSource()));
+            assertTrue(Files.exists(transfer.getDestination()));
+        }
+        assertEquals(0, ImportJournal.open(processFolder.getAbsolutePath()).restoreMovedImages(master));
+    }
+
+    @Test
+    public void testJournalAfterFinishedImport() throws Exception {
+        List<ImageTransfer> transfers = createJournalTransfers("journal_finished");
+        File processFolder = folder.newFolder("journal_finished_process");
+
+        ImportJournal journal = ImportJournal.open(processFolder.getAbsolutePath());
+        journal.plan(transfers);
+        for (ImageTransfer transfer : transfers) {
+            Files.copy(transfer.getSource(), transfer.getDestination());
+            journal.transferred(transfer);
+        }
+        journal.finish(null);
+
+        // the images were scanned again with the same size, a new import must not keep the old files
+        journal = ImportJournal.open(processFolder.getAbsolutePath());
+        assertTrue(journal.isPreviousImport());
+        assertEquals(2, journal.plan(transfers).size());
+        journal.close();
+    }
+
+    @Test
+    public void testLargestFirst() throws Exception {
+        File source = folder.newFolder("largest_source");
+        File destination = folder.newFolder("largest_destination");
+        List<ImageTransfer> transfers = new ArrayList<>();
+        for (int size : new int[] { 10, 1000, 100 }) {
+            Path image = Files.write(new File(source, size + ".tif").toPath(), new byte[size]);
+            ImageTransfer transfer = new ImageTransfer(image, destination.toPath().resolve(size + ".tif"));
+            transfer.setSize(size);
+            transfers.add(transfer);
+        }
+        List<String> order = Collections.synchronizedList(new ArrayList<>());
+        ImageTransferExecutor executor = new ImageTransferExecutor(1, TransferStrategy.COPY);
+        executor.addListener(transfer -> order.add(transfer.getSource().getFileName().toString()));
+        assertTrue(executor.execute(transfers).isEmpty());
+        assertEquals(Arrays.asList("1000.tif", "100.tif", "10.tif"), order);
+    }
+
+    @Test
+    public void testHotFolderPreparation() throws Exception {
+        File root = folder.newFolder("hotfolder");
+        File staging = folder.newFolder("staging");
+        File master = folder.newFolder("hotfolder_master");
+        Path volume = root.toPath().resolve("volume");
+        Path image = Files.write(Files.createDirectories(volume.resolve("1636-01-21")).resolve("0001.tif"), "abc".getBytes());
+        ImageNameRules rules = new ImageNameRules(Collections.emptyList(), ImageNameRules.DEFAULT_EXCLUDES, "", "_");
+        HotFolderWatcher watcher = new HotFolderWatcher(root.toPath(), rules, 2, 1, 1, 0, "", staging.toPath(), 1000, false);
+
+        assertNotNull(watcher.prepare(volume));
+        HotFolderWatcher.PreparedVolume prepared = watcher.take(volume, 1);
+        assertNotNull(prepared);
+        assertEquals(1, prepared.getSnapshot().getImageCount());
+        // the import owns the prepared volume now
+        assertNull(watcher.take(volume, 1));
+
+        ImageTransfer transfer = new ImageTransfer(image, master.toPath().resolve("Sequence_0001.tif"));
+        transfer.setSize(3);
+        assertEquals(1, prepared.apply(Collections.singletonList(transfer)));
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad", transfer.getChecksum());
+        Path staged = transfer.getStagedSource();
+        assertNotNull(staged);
+
+        assertTrue(new ImageTransferExecutor(1, TransferStrategy.COPY).execute(Collections.singletonList(transfer)).isEmpty());
+        assertTrue(Files.exists(transfer.getDestination()));
+        assertFalse(Files.exists(staged));
+        assertTrue(Files.exists(image));
+        prepared.discard();
+
+        // without a watch service, new volumes are found by listing the root folder. The first listing is the baseline, only volumes changed
+        // afterwards are prepared once they contain the sentinel file or did not change for the quiet time.
+        HotFolderWatcher polling = new HotFolderWatcher(root.toPath(), rules, 2, 1, 1, 60000, "done", null, 1000, false);
+        try {
+            assertTrue(polling.check(System.currentTimeMillis()).isEmpty());
+            Path delivered = root.toPath().resolve("delivered");
+            Files.write(Files.createDirectories(delivered.resolve("1636-01-21")).resolve("0001.tif"), "abc".getBytes());
+            Path uploading = root.toPath().resolve("uploading");
+            Files.write(Files.createDirectories(uploading.resolve("1636-01-21")).resolve("0001.tif"), "abc".getBytes());
+            Files.createFile(delivered.resolve("done"));
+            List<Future<?>> started = polling.check(System.currentTimeMillis());
+            assertEquals(1, started.size());
+            started.get(0).get();
+            HotFolderWatcher.PreparedVolume found = polling.take(delivered, 1);
+            assertNotNull(found);
+            assertEquals(1, found.getSnapshot().getImageCount());
+            assertNull(polling.take(uploading, 1));
+
+            // the volume without sentinel file is complete after the quiet time
+            started = polling.check(System.currentTimeMillis() + 60000);
+            assertEquals(1, started.size());
+            started.get(0).get();
+            assertNotNull(polling.take(uploading, 1));
+        } finally {
+            polling.stop();
+        }
+    }
+
+    @Test
+    public void testCopyEngine() throws Exception {
+        File source = folder.newFolder("engine");
+        File master = folder.newFolder("engine_master");
+        List<ImageTransfer> transfers = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            Path image = Files.write(source.toPath().resolve(i + ".tif"), ("image " + i).getBytes());
+            transfers.add(new ImageTransfer(image, master.toPath().resolve("Sequence_000" + i + ".tif")));
+        }
+        // direct buffers smaller than the images, the copies are complete once their batch of two files was synced
+        CopyEngine buffered = new CopyEngine(CopyEngine.Type.CHANNEL, 4, true, 2);
+        assertTrue(buffered.copy(transfers.get(0)).isEmpty());
+        assertEquals(transfers.subList(0, 2), buffered.copy(transfers.get(1)));
+        assertTrue(buffered.copy(transfers.get(2)).isEmpty());
+        assertEquals(Collections.singletonList(transfers.get(2)), buffered.flush());
+        for (ImageTransfer transfer : transfers) {
+            assertArrayEquals(Files.readAllBytes(transfer.getSource()), Files.readAllBytes(transfer.getDestination()));
+        }
+        assertEquals("bdd295acb9859817b9da544524ed3525a64f61bf5edb16deb0c28b6ae63d378b", transfers.get(0).getChecksum());
+        assertEquals("3f44606a61ca96a34824827ec9a98d8a", transfers.get(0).getMd5());
+
+        // transferTo in chunks smaller than the images
+        CopyEngine channel = new CopyEngine(CopyEngine.Type.CHANNEL, 3, false, 2);
+        Files.delete(transfers.get(0).getDestination());
+        assertTrue(channel.copy(transfers.get(0)).isEmpty());
+        assertArrayEquals(Files.readAllBytes(transfers.get(0).getSource()), Files.readAllBytes(transfers.get(0).getDestination()));
+
+        // the sync of the batch fails, so the first file of the batch fails as well
+        Files.delete(transfers.get(0).getDestination());
+        try {
+            channel.copy(transfers.get(1));
+            fail("The failed sync was not reported");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Sequence_0001.tif"));
+        }
+        assertEquals(Collections.singletonList(transfers.get(0)), channel.takeSyncFailures());
+        assertTrue(channel.takeSyncFailures().isEmpty());
+        assertTrue(channel.flush().isEmpty());
+    }
+
+    @Test
+    public void testTransferStrategies() throws Exception {
+        Path source = folder.newFolder("strategies").toPath();
+        Path master = folder.newFolder("strategies_master").toPath();
+        // this master folder is treated as if it was located on another file store
+        Path otherMaster = folder.newFolder("strategies_other_store").toPath();
+        List<ImageTransfer> transferred = Collections.synchronizedList(new ArrayList<>());
+
+        // hard links and moves within the same file store don't copy the image, the move removes the source
+        ImageTransfer link = new ImageTransfer(Files.write(source.resolve("link.tif"), "link".getBytes()), master.resolve("link.tif"));
+        assertTrue(createExecutor(TransferStrategy.HARDLINK, otherMaster, transferred).execute(Collections.singletonList(link)).isEmpty());
+        assertFalse(link.isCopied());
+        assertTrue(Files.isSameFile(link.getSource(), link.getDestination()));
+        ImageTransfer move = new ImageTransfer(Files.write(source.resolve("move.tif"), "move".getBytes()), master.resolve("move.tif"));
+        assertTrue(createExecutor(TransferStrategy.MOVE, otherMaster, transferred).execute(Collections.singletonList(move)).isEmpty());
+        assertFalse(move.isCopied());
+        assertFalse(Files.exists(move.getSource()));
+        assertArrayEquals("move".getBytes(), Files.readAllBytes(move.getDestination()));
+
+        // on another file store every strategy falls back to a copy, the move removes the source after the copy
+        for (TransferStrategy strategy : TransferStrategy.values()) {
+            String name = strategy.name().toLowerCase(Locale.ROOT) + ".tif";
+            ImageTransfer transfer = new ImageTransfer(Files.write(source.resolve(name), name.getBytes()), otherMaster.resolve(name));
+            assertTrue(createExecutor(strategy, otherMaster, transferred).execute(Collections.singletonList(transfer)).isEmpty());
+            assertTrue(transfer.isCopied());
+            assertArrayEquals(name.getBytes(), Files.readAllBytes(transfer.getDestination()));
+            assertEquals(strategy != TransferStrategy.MOVE, Files.exists(transfer.getSource()));
+        }
+        assertEquals(2 + TransferStrategy.values().length, transferred.size());
+    }
+
+    @Test
+    public void testImageProbe() throws Exception {
+        File image = folder.newFile("probe.jpg");
+        ImageIO.write(new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB), "jpg", image);
+        ImageInfo info = ImageProbe.probe(image.toPath());
+        assertNotNull(info);
+        assertEquals("image/jpeg", info.getMimetype());
+        assertEquals(20, info.getWidth());
+        assertEquals(10, info.getHeight());
+        assertEquals(3, info.getSamplesPerPixel());
+        assertEquals(8, info.getBitsPerSample());
+    }
+
+    @Test
+    public void testIoGovernor() throws Exception {
+        IoGovernor governor = new IoGovernor(0, 4, 10);
+        assertEquals(4, governor.getFileLimit());
+        // four slow files of one megabyte halve the limit
+        for (int i = 0; i < 4; i++) {
+            governor.acquireFile();
+        }
+        for (int i = 0; i < 4; i++) {
+            governor.releaseFile(1024 * 1024, 1_000_000_000L);
+        }
+        assertEquals(2, governor.getFileLimit());
+
+        // all imports share one governor, the most restrictive limits of all imports apply
+        IoGovernor shared = IoGovernor.getInstance(0, 8, 10);
+        assertSame(shared, IoGovernor.getInstance(0, 4, 20));
+        assertSame(shared, IoGovernor.getInstance());
+        assertEquals(4, shared.getMaxFiles());
+        assertTrue(shared.getFileLimit() <= 4);
+    }
+
+    @Test
+    public void testImportMetrics() {
+        ImportMetrics metrics = new ImportMetrics(1);
+        ImageTransfer fast = new ImageTransfer(Paths.get("a.tif"), Paths.get("b.tif"));
+        fast.setSize(100);
+        fast.setDurationNanos(500_000);
+        metrics.transferred(fast);
+        ImageTransfer slow = new ImageTransfer(Paths.get("c.tif"), Paths.get("d.tif"));
+        slow.setSize(200);
+        slow.setDurationNanos(3_000_000);
+        metrics.transferred(slow);
+        try (ImportMetrics.Timer timer = metrics.time(ImportMetrics.Phase.TRANSFER)) {
+            // nothing to measure
+        }
+
+        assertEquals(2, metrics.getFiles());
+        assertEquals(300, metrics.getBytes());
+        long[] histogram = metrics.getLatencyHistogram();
+        assertEquals(1, histogram[0]);
+        assertEquals(1, histogram[2]);
+        assertTrue(metrics.getSummary().contains("files=2"));
+    }
+
     @Before
     public void setUp() throws Exception {
         // prepare folder
@@ -115,6 +842,7 @@ public class FolderimportPluginTest {
         EasyMock.expect(configurationHelper.getGoobiContentServerTimeOut()).andReturn(60000).anyTimes();
         EasyMock.expect(configurationHelper.getMetadataFolder()).andReturn(metadataDirectoryName).anyTimes();
         EasyMock.expect(configurationHelper.getRulesetFolder()).andReturn(resourcesFolder).anyTimes();
+        EasyMock.expect(configurationHelper.getConfigurationFolder()).andReturn(resourcesFolder).anyTimes();
         EasyMock.expect(configurationHelper.getProcessImagesMasterDirectoryName()).andReturn("folder_master").anyTimes();
         EasyMock.expect(configurationHelper.isCreateMasterDirectory()).andReturn(true).anyTimes();
         EasyMock.expect(configurationHelper.isUseMasterDirectory()).andReturn(true).anyTimes();
@@ -129,6 +857,7 @@ public class FolderimportPluginTest {
         prefs.loadPrefs(resourcesFolder + "ruleset.xml");
         Fileformat ff = new MetsMods(prefs);
         ff.read(metaTarget.toString());
+        fileformat = ff;
 
         PowerMock.mockStatic(ConfigPlugins.class);
         EasyMock.expect(ConfigPlugins.getProjectAndStepConfig(EasyMock.anyString(), EasyMock.anyObject(Step.class)))
@@ -204,6 +933,50 @@ public class FolderimportPluginTest {
         mediaDirectory.mkdir();
     }
 
+    /**
+     * Create two images of ten bytes and their transfers into a common master folder
+     */
+    private List<ImageTransfer> createJournalTransfers(String name) throws IOException {
+        File source = folder.newFolder(name);
+        Path master = folder.newFolder(name + "_master").toPath();
+        List<ImageTransfer> transfers = new ArrayList<>();
+        for (String image : new String[] { "0001.tif", "0002.tif" }) {
+            Path file = Files.write(new File(source, image).toPath(), image.getBytes());
+            ImageTransfer transfer = new ImageTransfer(file, master.resolve("Sequence_" + image));
+            transfer.setSize(Files.size(file));
+            transfers.add(transfer);
+        }
+        return transfers;
+    }
+
+    private static ImageTransferExecutor createExecutor(TransferStrategy strategy, Path otherStoreFolder, List<ImageTransfer> transferred) {
+        FileStore otherStore = EasyMock.createMock(FileStore.class);
+        ImageTransferExecutor executor = new ImageTransferExecutor(2, strategy) {
+            @Override
+            FileStore getFileStore(Path folder) throws IOException {
+                return folder.startsWith(otherStoreFolder) ? otherStore : super.getFileStore(folder);
+            }
+        };
+        executor.addListener(transferred::add);
+        return executor;
+    }
+
+    private static List<DocStruct> getImportedElements(FolderimportConfiguration configuration, DocStruct logical) {
+        List<DocStruct> elements = new ArrayList<>();
+        for (DocStruct child : logical.getAllChildren()) {
+            if (configuration.getImportedTypes().contains(child.getType().getName())) {
+                elements.add(child);
+            }
+        }
+        return elements;
+    }
+
+    private String getSingleValue(DocStruct ds, String metadataType) {
+        List<? extends Metadata> metadata = ds.getAllMetadataByType(prefs.getMetadataTypeByName(metadataType));
+        assertEquals(1, metadata.size());
+        return metadata.get(0).getValue();
+    }
+
     private SubnodeConfiguration getConfig() {
         String file = "plugin_intranda_step_folderimport.xml";
         XMLConfiguration config = new XMLConfiguration();
@@ -0,0 +1,86 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates import folders of production size for the tests: a root folder with thousands of volumes and a volume with any number of pages. The
+ * folder names contain umlauts like the deliveries, the images are filled with random bytes.
+ */
+public final class VolumeFixture {
+
+    // titles of the other volumes in the root folder
+    private static final String[] TITLES =
+            { "Konsulatsprotokolle", "Ratsprotokolle", "Stadtbuch Lübeck", "Kämmereirechnungen", "Bürgerbuch Straßburg", "Gerichtsbücher" };
+
+    private VolumeFixture() {
+    }
+
+    /**
+     * Create empty volume folders with different titles and dates, so the folder of the process has to be found among them
+     * 
+     * @param rootFolder the root folder
+     * @param volumes number of volume folders to create
+     * @throws IOException if a folder cannot be created
+     */
+    public static void createRootFolder(Path rootFolder, int volumes) throws IOException {
+        for (int i = 0; i < volumes; i++) {
+            int year = 1500 + i / TITLES.length;
+            Files.createDirectories(rootFolder.resolve(String.format("%s %d-01-01 - %d-12-31", TITLES[i % TITLES.length], year, year)));
+        }
+    }
+
+    /**
+     * Create a volume with a front cover, a title page, date folders and a spine. The images of the date folders are distributed over folders
+     * of imagesPerFolder images.
+     * 
+     * @param volume the volume folder to create
+     * @param pages number of images of the volume, at least 3
+     * @param imagesPerFolder maximum number of images in a date folder
+     * @param imageSize size of each image in bytes
+     * @return the paths of the images relative to the volume, in the order of the pages
+     * @throws IOException if a file cannot be written
+     */
+    public static List<String> createVolume(Path volume, int pages, int imagesPerFolder, int imageSize) throws IOException {
+        Random random = new Random(42);
+        byte[] content = new byte[imageSize];
+        random.nextBytes(content);
+        List<String> images = new ArrayList<>(pages);
+        createImages(volume, "Vorderdeckel", 1, content, images);
+        createImages(volume, "Titelblatt", 1, content, images);
+        int remaining = pages - 3;
+        for (int folder = 0; remaining > 0; folder++) {
+            int count = Math.min(imagesPerFolder, remaining);
+            createImages(volume, getFolderName(folder), count, content, images);
+            remaining -= count;
+        }
+        createImages(volume, "Buchrücken", 1, content, images);
+        return images;
+    }
+
+    /**
+     * Get the name of a generated date folder, the names sort in the order of their index
+     * 
+     * @param index number of the folder
+     * @return a name like "1636-01-21; 1636-02-21"
+     */
+    public static String getFolderName(int index) {
+        int year = 1600 + index / 336;
+        int month = 1 + (index / 28) % 12;
+        int day = 1 + index % 28;
+        return String.format("%d-%02d-%02d; %d-%02d-%02d", year, month, day, year, month % 12 + 1, day);
+    }
+
+    private static void createImages(Path volume, String folderName, int count, byte[] content, List<String> images) throws IOException {
+        Path folder = Files.createDirectories(volume.resolve(folderName));
+        for (int image = 1; image <= count; image++) {
+            String name = String.format("%05d.tif", image);
+            Files.write(folder.resolve(name), content);
+            images.add(folderName + "/" + name);
+        }
+    }
+}
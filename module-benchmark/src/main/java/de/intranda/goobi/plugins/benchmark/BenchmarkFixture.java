@@ -0,0 +1,156 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+
+import de.intranda.goobi.plugins.FolderimportConfiguration;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+
+/**
+ * Creates the synthetic data used by the benchmarks. Everything is generated, no external data or network access is needed.
+ */
+public final class BenchmarkFixture {
+
+    // plugin configuration used by all benchmarks, additional elements can be added
+    private static final String CONFIGURATION = "<config_plugin><config><project>*</project><step>*</step><imageFolder>%s</imageFolder>"
+            + "<prefixType foldername=\"Vorderdeckel\" doctype=\"Cover\"/><prefixType foldername=\"Titelblatt\" doctype=\"TitlePage\"/>"
+            + "<mainType>Sequence</mainType><suffixType foldername=\"Buchrücken\" doctype=\"Spine\"/>%s</config></config_plugin>";
+
+    private BenchmarkFixture() {
+    }
+
+    /**
+     * Create a temporary folder, in memory on /dev/shm if available to measure the code and not the disk
+     * 
+     * @param prefix prefix of the folder name
+     * @return the new folder
+     * @throws IOException if the folder cannot be created
+     */
+    public static Path createTempFolder(String prefix) throws IOException {
+        Path shm = Paths.get("/dev/shm");
+        if (Files.isDirectory(shm) && Files.isWritable(shm)) {
+            return Files.createTempDirectory(shm, prefix);
+        }
+        return Files.createTempDirectory(prefix);
+    }
+
+    /**
+     * Create a volume folder with structure folders and images filled with random bytes
+     * 
+     * @param volume the volume folder to create
+     * @param folders number of date folders
+     * @param imagesPerFolder number of images in each folder
+     * @param imageSize size of each image in bytes
+     * @throws IOException if a file cannot be written
+     */
+    public static void createVolume(Path volume, int folders, int imagesPerFolder, int imageSize) throws IOException {
+        Random random = new Random(42);
+        byte[] content = new byte[imageSize];
+        random.nextBytes(content);
+        for (int folder = 0; folder < folders; folder++) {
+            Path structureFolder = volume.resolve(getFolderName(folder));
+            Files.createDirectories(structureFolder);
+            for (int image = 1; image <= imagesPerFolder; image++) {
+                Files.write(structureFolder.resolve(String.format("%04d.tif", image)), content);
+            }
+        }
+    }
+
+    /**
+     * Get the name of a generated date folder
+     * 
+     * @param index number of the folder
+     * @return a name like "1636-01-21; 1636-02-09"
+     */
+    public static String getFolderName(int index) {
+        int year = 1600 + index / 336;
+        int month = 1 + (index / 28) % 12;
+        int day = 1 + index % 28;
+        return String.format("%d-%02d-%02d; %d-%02d-%02d", year, month, day, year, month % 12 + 1, day);
+    }
+
+    /**
+     * Load the ruleset of the unit tests, it is packaged into the benchmark jar
+     * 
+     * @return the ruleset
+     * @throws IOException if the ruleset cannot be extracted
+     * @throws PreferencesException if the ruleset cannot be parsed
+     */
+    public static Prefs loadRuleset() throws IOException, PreferencesException {
+        Path ruleset = Files.createTempFile("ruleset", ".xml");
+        try (InputStream in = BenchmarkFixture.class.getResourceAsStream("/ruleset.xml")) {
+            Files.copy(in, ruleset, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Prefs prefs = new Prefs();
+        prefs.loadPrefs(ruleset.toString());
+        Files.delete(ruleset);
+        return prefs;
+    }
+
+    /**
+     * Create the plugin configuration
+     * 
+     * @param prefs the ruleset
+     * @param imageFolder the root folder
+     * @param additionalElements additional configuration elements, e.g. &lt;copyThreads&gt;
+     * @return the configuration
+     * @throws ConfigurationException if the configuration cannot be parsed
+     */
+    public static FolderimportConfiguration createConfiguration(Prefs prefs, String imageFolder, String additionalElements)
+            throws ConfigurationException {
+        XMLConfiguration xml = new XMLConfiguration();
+        xml.setDelimiterParsingDisabled(true);
+        xml.load(new StringReader(String.format(CONFIGURATION, imageFolder, additionalElements)));
+        xml.setExpressionEngine(new XPathExpressionEngine());
+        return new FolderimportConfiguration(xml.configurationAt("config"), prefs);
+    }
+
+    /**
+     * Delete a folder with all its content
+     * 
+     * @param folder the folder to delete
+     * @throws IOException if a file cannot be deleted
+     */
+    public static void delete(Path folder) throws IOException {
+        if (folder == null || !Files.exists(folder)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(folder)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
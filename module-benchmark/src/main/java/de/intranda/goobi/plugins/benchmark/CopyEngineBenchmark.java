@@ -0,0 +1,124 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.CopyEngine;
+import de.intranda.goobi.plugins.ImageTransfer;
+
+/**
+ * Copy of large images with the different copy engines. The counter gigabytes shows the copied GB per second. By default the files are created
+ * on /dev/shm if available; set the parameter folder to measure a real disk or a network storage.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgs = { "-Xmx1g", "-XX:MaxDirectMemorySize=512m" })
+@State(Scope.Benchmark)
+public class CopyEngineBenchmark {
+
+    private static final double GIGABYTE = 1024.0 * 1024 * 1024;
+
+    @Param({ "stream", "transferTo", "directBuffers" })
+    public String engine;
+
+    @Param({ "1048576", "8388608" })
+    public int chunkSize;
+
+    @Param({ "4" })
+    public int images;
+
+    @Param({ "268435456" })
+    public int imageSize;
+
+    @Param({ "0" })
+    public int fsyncBatch;
+
+    // folder for the test files, empty for /dev/shm or the temp folder
+    @Param({ "" })
+    public String folder;
+
+    private Path root;
+    private List<ImageTransfer> transfers;
+    private CopyEngine copyEngine;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Throughput {
+
+        // copied gigabytes, reported per second
+        public double gigabytes;
+    }
+
+    @Setup(Level.Trial)
+    public void setUpImages() throws IOException {
+        root = folder.isEmpty() ? BenchmarkFixture.createTempFolder("copy") : Files.createTempDirectory(Paths.get(folder), "copy");
+        Path volume = root.resolve("volume");
+        Path master = root.resolve("master");
+        Files.createDirectories(master);
+        BenchmarkFixture.createVolume(volume, 1, images, imageSize);
+        transfers = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(volume)) {
+            files.filter(Files::isRegularFile)
+                    .sorted()
+                    .forEach(image -> transfers.add(new ImageTransfer(image, master.resolve(image.getFileName()))));
+        }
+        CopyEngine.Type type = "stream".equals(engine) ? CopyEngine.Type.STREAM : CopyEngine.Type.CHANNEL;
+        copyEngine = new CopyEngine(type, chunkSize, "directBuffers".equals(engine), fsyncBatch);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownImages() throws IOException {
+        BenchmarkFixture.delete(root);
+    }
+
+    @Benchmark
+    public void copy(Throughput throughput) throws IOException {
+        for (ImageTransfer transfer : transfers) {
+            copyEngine.copy(transfer);
+        }
+        copyEngine.flush();
+        throughput.gigabytes += (double) images * imageSize / GIGABYTE;
+    }
+}
@@ -0,0 +1,100 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.RootFolderIndex;
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * Finding the folder of a process within a root folder with many volume folders: the shared index compared to listing the root folder for every
+ * process.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FolderMatchingBenchmark {
+
+    @Param({ "1000", "10000", "50000" })
+    public int folders;
+
+    private Path root;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        root = BenchmarkFixture.createTempFolder("folder-matching");
+        prefixes = new String[folders];
+        for (int i = 0; i < folders; i++) {
+            String name = "Konsulatsprotokolle " + BenchmarkFixture.getFolderName(i).replace(';', ' ') + " - " + i;
+            Files.createDirectory(root.resolve(name));
+            prefixes[i] = name.substring(0, name.length() - 3);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        BenchmarkFixture.delete(root);
+    }
+
+    @Benchmark
+    public List<Path> indexedLookup() {
+        return RootFolderIndex.getInstance(root.toString()).findByPrefix(nextPrefix());
+    }
+
+    @Benchmark
+    public Path linearScan() {
+        // the lookup before the index was introduced
+        String prefix = nextPrefix();
+        for (Path current : StorageProvider.getInstance().listFiles(root.toString())) {
+            if (current.getFileName().toString().startsWith(prefix)) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    private String nextPrefix() {
+        next = (next + 7919) % folders;
+        return prefixes[next];
+    }
+}
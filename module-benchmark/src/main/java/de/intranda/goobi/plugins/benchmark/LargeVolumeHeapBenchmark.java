@@ -0,0 +1,145 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.FolderimportConfiguration;
+import de.intranda.goobi.plugins.ImageTransfer;
+import de.intranda.goobi.plugins.StructureBuilder;
+import de.intranda.goobi.plugins.VolumeSnapshot;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Heap retained by the structure of a large volume. The benchmark runs with a small fixed heap and fails if a page needs more than maxBytesPerPage,
+ * the counter retainedBytesPerPage must stay roughly the same for all volume sizes.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx768m" })
+@State(Scope.Benchmark)
+public class LargeVolumeHeapBenchmark {
+
+    // each structure folder contains 500 images
+    private static final int IMAGES_PER_FOLDER = 500;
+
+    @Param({ "10000", "50000" })
+    public int pages;
+
+    @Param({ "8192" })
+    public long maxBytesPerPage;
+
+    private static final String MASTER_FOLDER = "/opt/digiverso/goobi/metadata/1/images/master_media";
+
+    private FolderimportConfiguration configuration;
+    private VolumeSnapshot snapshot;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class HeapCounter {
+
+        // heap retained by the digital document and the planned transfers, divided by the number of pages
+        public long retainedBytesPerPage;
+
+        private DigitalDocument dd;
+        private DocStruct logical;
+        private DocStruct physical;
+        private long baseline;
+
+        @Setup(Level.Invocation)
+        public void setUpDocument(LargeVolumeHeapBenchmark benchmark) throws UGHException {
+            Prefs prefs = benchmark.configuration.getPrefs();
+            dd = new DigitalDocument();
+            logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Record"));
+            dd.setLogicalDocStruct(logical);
+            physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+            dd.setPhysicalDocStruct(physical);
+            baseline = getUsedHeap();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpVolume() throws IOException, UGHException, ConfigurationException {
+        Prefs prefs = BenchmarkFixture.loadRuleset();
+        configuration = BenchmarkFixture.createConfiguration(prefs, "/opt/digiverso/import", "");
+        Path volume = Paths.get("/opt/digiverso/import/Konsulatsprotokolle 1636-01-21 - 1638-04-17");
+        Map<String, List<Path>> images = new LinkedHashMap<>();
+        for (int folder = 0; folder * IMAGES_PER_FOLDER < pages; folder++) {
+            String folderName = BenchmarkFixture.getFolderName(folder);
+            List<Path> folderImages = new ArrayList<>(IMAGES_PER_FOLDER);
+            for (int image = 1; image <= IMAGES_PER_FOLDER && folder * IMAGES_PER_FOLDER + image <= pages; image++) {
+                folderImages.add(volume.resolve(folderName).resolve(String.format("%05d.tif", image)));
+            }
+            images.put(folderName, folderImages);
+        }
+        snapshot = new VolumeSnapshot(volume, images);
+    }
+
+    @Benchmark
+    public List<ImageTransfer> createPages(HeapCounter counter) {
+        StructureBuilder builder = new StructureBuilder(configuration, counter.dd, counter.logical, counter.physical, MASTER_FOLDER);
+        List<ImageTransfer> transfers = builder.build(snapshot);
+        counter.retainedBytesPerPage = (getUsedHeap() - counter.baseline) / pages;
+        if (counter.retainedBytesPerPage > maxBytesPerPage) {
+            throw new IllegalStateException("A page needs " + counter.retainedBytesPerPage + " bytes, the limit is " + maxBytesPerPage);
+        }
+        return transfers;
+    }
+
+    /**
+     * Get the used heap after a full garbage collection, so only reachable objects are counted
+     */
+    private static long getUsedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
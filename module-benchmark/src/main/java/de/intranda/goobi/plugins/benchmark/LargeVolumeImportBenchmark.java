@@ -0,0 +1,160 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.FolderimportConfiguration;
+import de.intranda.goobi.plugins.ImageTransfer;
+import de.intranda.goobi.plugins.ImageTransferExecutor;
+import de.intranda.goobi.plugins.RootFolderIndex;
+import de.intranda.goobi.plugins.StructureBuilder;
+import de.intranda.goobi.plugins.VolumeScanner;
+import de.intranda.goobi.plugins.VolumeSnapshot;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+
+/**
+ * Import of a large volume from a root folder with many other volumes: finding the folder, scanning it, creating the pages and copying the
+ * images. The benchmark fails if less than minPagesPerSecond pages are imported per second, the counter pagesPerSecond shows the import rate.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx768m" })
+@State(Scope.Benchmark)
+public class LargeVolumeImportBenchmark {
+
+    // each structure folder contains 500 images
+    private static final int IMAGES_PER_FOLDER = 500;
+
+    private static final String VOLUME = "Konsulatsprotokolle 1636-01-21 - 1638-04-17";
+
+    @Param({ "10000" })
+    public int pages;
+
+    @Param({ "2000" })
+    public int rootFolders;
+
+    @Param({ "1024" })
+    public int imageSize;
+
+    @Param({ "100" })
+    public long minPagesPerSecond;
+
+    private Path root;
+    private Path master;
+    private FolderimportConfiguration configuration;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class ImportRate {
+
+        public long pagesPerSecond;
+
+        private DigitalDocument dd;
+        private DocStruct logical;
+        private DocStruct physical;
+
+        @Setup(Level.Invocation)
+        public void setUpDocument(LargeVolumeImportBenchmark benchmark) throws UGHException {
+            Prefs prefs = benchmark.configuration.getPrefs();
+            dd = new DigitalDocument();
+            logical = dd.createDocStruct(prefs.getDocStrctTypeByName("Record"));
+            dd.setLogicalDocStruct(logical);
+            physical = dd.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+            dd.setPhysicalDocStruct(physical);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUpRootFolder() throws IOException, UGHException, ConfigurationException {
+        root = BenchmarkFixture.createTempFolder("large-volume");
+        for (int i = 0; i < rootFolders; i++) {
+            Files.createDirectory(root.resolve("Ratsprotokolle " + BenchmarkFixture.getFolderName(i).replace(';', ' ') + " - " + i));
+        }
+        int folders = (pages + IMAGES_PER_FOLDER - 1) / IMAGES_PER_FOLDER;
+        BenchmarkFixture.createVolume(root.resolve(VOLUME), folders, pages / folders, imageSize);
+        master = root.resolveSibling(root.getFileName() + "_master");
+        configuration = BenchmarkFixture.createConfiguration(BenchmarkFixture.loadRuleset(), root.toString(), "");
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpMasterFolder() throws IOException {
+        Files.createDirectories(master);
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownMasterFolder() throws IOException {
+        BenchmarkFixture.delete(master);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownRootFolder() throws IOException {
+        BenchmarkFixture.delete(root);
+    }
+
+    @Benchmark
+    public List<ImageTransfer> importVolume(ImportRate rate) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Path> found = configuration.getFolderMatcher().find(RootFolderIndex.getInstance(root.toString()), VOLUME);
+        if (found.size() != 1) {
+            throw new IllegalStateException("Found " + found + " instead of the volume");
+        }
+        VolumeSnapshot snapshot = new VolumeScanner(configuration.getScanThreads(), configuration.getScanDepth()).scan(found.get(0));
+        StructureBuilder builder = new StructureBuilder(configuration, rate.dd, rate.logical, rate.physical, master.toString());
+        List<ImageTransfer> transfers = builder.build(snapshot);
+        List<ImageTransfer> failed =
+                new ImageTransferExecutor(configuration.getCopyThreads(), configuration.getTransferStrategy(), configuration.createCopyEngine())
+                        .execute(transfers);
+        if (!failed.isEmpty()) {
+            throw new IllegalStateException(failed.size() + " images could not be copied");
+        }
+        long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        rate.pagesPerSecond = transfers.size() * 1000L / millis;
+        if (rate.pagesPerSecond < minPagesPerSecond) {
+            throw new IllegalStateException(rate.pagesPerSecond + " pages per second, the limit is " + minPagesPerSecond);
+        }
+        return transfers;
+    }
+}
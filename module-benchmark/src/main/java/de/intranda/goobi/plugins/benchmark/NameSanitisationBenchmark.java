@@ -0,0 +1,85 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.intranda.goobi.plugins.ImageNameRules;
+
+/**
+ * Filtering and renaming of image names, compared to the regular expression that was compiled for each image before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NameSanitisationBenchmark {
+
+    @Param({ "Titelblatt_0001.tif", "1636-01-12; 1636-02-05; 1635-12-18_0001.tif", "Buchrücken_0001.tif" })
+    public String name;
+
+    private ImageNameRules rules;
+    private Pattern precompiled;
+
+    @Setup
+    public void setUp() {
+        rules = new ImageNameRules(Collections.singletonList("*.tif"), ImageNameRules.DEFAULT_EXCLUDES, "", "_");
+        precompiled = Pattern.compile("[^\\w_\\.]");
+    }
+
+    @Benchmark
+    public String sanitise() {
+        return rules.sanitise(name);
+    }
+
+    @Benchmark
+    public String replaceAll() {
+        // the renaming before the rules were introduced
+        return name.replaceAll("[^\\w_\\.]", "_");
+    }
+
+    @Benchmark
+    public String precompiledPattern() {
+        return precompiled.matcher(name).replaceAll("_");
+    }
+
+    @Benchmark
+    public void accept(Blackhole blackhole) {
+        blackhole.consume(rules.accept(name));
+        blackhole.consume(rules.accept("Thumbs.db"));
+    }
+}
@@ -0,0 +1,117 @@
+package de.intranda.goobi.plugins.benchmark;
+
+/**
+ * This file is part of a plugin for Goobi - a Workflow tool for the support of mass digitization.
+ *
+ * Visit the websites for more information.
+ *          - https://goobi.io
+ *          - https://www.intranda.com
+ *          - https://github.com/intranda/goobi
+ *
+ * This program is free software; you can redistribute it and/or modify it under the terms of the GNU General Public License as published by the Free
+ * Software Foundation; either version 2 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program; if not, write to the Free Software Foundation, Inc., 59
+ * Temple Place, Suite 330, Boston, MA 02111-1307 USA
+ *
+ */
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.intranda.goobi.plugins.ImageTransfer;
+import de.intranda.goobi.plugins.ImageTransferExecutor;
+import de.intranda.goobi.plugins.TransferStrategy;
+
+/**
+ * Transfer of a generated volume into a master folder with the different transfer strategies. The files are created on /dev/shm if available, so
+ * the result shows the overhead of the plugin and not the speed of a disk.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransferBenchmark {
+
+    @Param({ "COPY", "HARDLINK", "REFLINK_OR_COPY", "MOVE" })
+    public TransferStrategy strategy;
+
+    @Param({ "1", "4" })
+    public int threads;
+
+    @Param({ "200" })
+    public int images;
+
+    @Param({ "1048576" })
+    public int imageSize;
+
+    private Path root;
+    private Path volume;
+    private Path master;
+    private List<ImageTransfer> transfers;
+
+    @Setup(Level.Trial)
+    public void setUpVolume() throws IOException {
+        root = BenchmarkFixture.createTempFolder("transfer");
+        volume = root.resolve("volume");
+        master = root.resolve("master");
+        BenchmarkFixture.createVolume(volume, images / 20, 20, imageSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTransfers() throws IOException {
+        Files.createDirectories(master);
+        transfers = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(volume)) {
+            files.filter(Files::isRegularFile).sorted().forEach(image -> {
+                String newName = image.getParent().getFileName().toString().replaceAll("[^\\w.]", "_") + "_" + image.getFileName();
+                transfers.add(new ImageTransfer(image, master.resolve(newName)));
+            });
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void tearDownTransfers() throws IOException {
+        if (strategy == TransferStrategy.MOVE) {
+            // bring the images back for the next invocation
+            for (ImageTransfer transfer : transfers) {
+                Files.move(transfer.getDestination(), transfer.getSource());
+            }
+        }
+        BenchmarkFixture.delete(master);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownVolume() throws IOException {
+        BenchmarkFixture.delete(root);
+    }
+
+    @Benchmark
+    public List<ImageTransfer> transfer() throws InterruptedException {
+        return new ImageTransferExecutor(threads, strategy).execute(transfers);
+    }
+}